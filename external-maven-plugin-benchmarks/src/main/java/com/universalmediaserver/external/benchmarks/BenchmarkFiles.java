@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/**
+ * Creates the test data for the benchmarks. The data is generated from a
+ * fixed seed, so every run measures the same bytes, and compresses about
+ * as well as typical binaries.
+ */
+public final class BenchmarkFiles {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private BenchmarkFiles() {
+	}
+
+	/**
+	 * Creates a new temporary directory.
+	 *
+	 * @param prefix the directory name prefix
+	 * @return The directory
+	 * @throws IOException if the directory could not be created
+	 */
+	public static File createTempDirectory(String prefix) throws IOException {
+		return Files.createTempDirectory(prefix).toFile();
+	}
+
+	/**
+	 * Writes a file of the given size.
+	 *
+	 * @param file the file to write
+	 * @param size the size in bytes
+	 * @param seed the seed of the data
+	 * @throws IOException if the file could not be written
+	 */
+	public static void write(File file, long size, long seed) throws IOException {
+		File parent = file.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create folder: " + parent.getAbsolutePath());
+		}
+		Random random = new Random(seed);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (OutputStream os = new FileOutputStream(file)) {
+			long remaining = size;
+			while (remaining > 0) {
+				fill(random, buffer);
+				int len = (int) Math.min(remaining, buffer.length);
+				os.write(buffer, 0, len);
+				remaining -= len;
+			}
+		}
+	}
+
+	/**
+	 * Creates a directory tree with <code>count</code> files of
+	 * <code>size</code> bytes each, spread over a few sub directories.
+	 *
+	 * @param directory the root of the tree
+	 * @param count the number of files
+	 * @param size the size of each file in bytes
+	 * @throws IOException if a file could not be written
+	 */
+	public static void writeTree(File directory, int count, long size) throws IOException {
+		for (int i = 0; i < count; i++) {
+			write(new File(directory, String.format("lib/dir%02d/file%04d.bin", i % 16, i)), size, i);
+		}
+	}
+
+	/**
+	 * Deletes a file or a directory tree, ignoring failures.
+	 *
+	 * @param file the file or directory
+	 */
+	public static void delete(File file) {
+		if (file == null || !file.exists()) {
+			return;
+		}
+		try {
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+					Files.deleteIfExists(path);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path path, IOException e) throws IOException {
+					Files.deleteIfExists(path);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			// Left for the system to clean up
+		}
+	}
+
+	/**
+	 * Fills the buffer with runs of repeated and random bytes, which
+	 * compresses to roughly half its size.
+	 */
+	private static void fill(Random random, byte[] buffer) {
+		int i = 0;
+		while (i < buffer.length) {
+			int run = Math.min(buffer.length - i, 8 + random.nextInt(56));
+			if (random.nextBoolean()) {
+				byte value = (byte) random.nextInt(16);
+				for (int j = 0; j < run; j++) {
+					buffer[i++] = value;
+				}
+			} else {
+				for (int j = 0; j < run; j++) {
+					buffer[i++] = (byte) random.nextInt();
+				}
+			}
+		}
+	}
+}
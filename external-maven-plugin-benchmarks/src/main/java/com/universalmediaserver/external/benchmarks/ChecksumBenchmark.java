@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external.benchmarks;
+
+import com.universalmediaserver.external.DigestCalculator;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the checksum calculation of a file, for the checksums calculated
+ * when an artifact is installed and for all supported algorithms in one
+ * pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+
+	private static final List<String> INSTALL_ALGORITHMS = Arrays.asList(DigestCalculator.MD5, DigestCalculator.SHA1);
+	private static final List<String> ALL_ALGORITHMS = Arrays.asList(
+		DigestCalculator.MD5,
+		DigestCalculator.SHA1,
+		DigestCalculator.SHA256,
+		DigestCalculator.SHA512
+	);
+
+	/** The file size in megabytes */
+	@Param({"1", "64"})
+	public int sizeMegabytes;
+
+	private File directory;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = BenchmarkFiles.createTempDirectory("checksum-benchmark");
+		file = new File(directory, "artifact.bin");
+		BenchmarkFiles.write(file, sizeMegabytes * 1024L * 1024L, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkFiles.delete(directory);
+	}
+
+	@Benchmark
+	public Map<String, String> sha1() throws IOException {
+		return DigestCalculator.calculate(file, Collections.singletonList(DigestCalculator.SHA1));
+	}
+
+	@Benchmark
+	public Map<String, String> md5AndSha1() throws IOException {
+		return DigestCalculator.calculate(file, INSTALL_ALGORITHMS);
+	}
+
+	@Benchmark
+	public Map<String, String> allAlgorithms() throws IOException {
+		return DigestCalculator.calculate(file, ALL_ALGORITHMS);
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external.benchmarks;
+
+import com.universalmediaserver.external.ArchiveExtractor;
+import com.universalmediaserver.external.ArchivePacker;
+import com.universalmediaserver.external.DigestCalculator;
+import com.universalmediaserver.external.DigestedFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the extraction of a single file and of a directory from an
+ * archive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+	private static final List<String> ALGORITHMS = Arrays.asList(DigestCalculator.MD5, DigestCalculator.SHA1);
+
+	/** The archive format */
+	@Param({"zip", "tar.gz"})
+	public String format;
+
+	private File directory;
+	private File archive;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = BenchmarkFiles.createTempDirectory("extraction-benchmark");
+		File tree = new File(directory, "tree");
+		BenchmarkFiles.writeTree(tree, 256, 128 * 1024);
+		archive = new File(directory, "archive." + format);
+		new ArchivePacker(6, 1, true).pack(tree, archive);
+	}
+
+	@Setup(Level.Invocation)
+	public void createOutput() throws IOException {
+		output = BenchmarkFiles.createTempDirectory("extraction-benchmark-output");
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteOutput() {
+		BenchmarkFiles.delete(output);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkFiles.delete(directory);
+	}
+
+	/**
+	 * Extracts the last file of the archive.
+	 */
+	@Benchmark
+	public Map<String, DigestedFile> extractFile() throws IOException {
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, ALGORITHMS);
+		extractor.add("lib/dir15/file0255.bin", new File(output, "file0255.bin"), null);
+		return extractor.extract();
+	}
+
+	/**
+	 * Extracts a directory with a sixteenth of the files.
+	 */
+	@Benchmark
+	public Map<String, DigestedFile> extractDirectory() throws IOException {
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, ALGORITHMS);
+		extractor.add("lib/dir07", new File(output, "dir07.bin"), new File(output, "dir07"));
+		return extractor.extract();
+	}
+}
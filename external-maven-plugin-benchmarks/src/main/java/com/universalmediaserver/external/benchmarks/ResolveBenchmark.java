@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.universalmediaserver.external.ArchiveExtractor;
+import com.universalmediaserver.external.ArchivePacker;
+import com.universalmediaserver.external.DigestCalculator;
+import com.universalmediaserver.external.DigestedFile;
+import com.universalmediaserver.external.DownloadCache;
+import com.universalmediaserver.external.HttpTransfer;
+import com.universalmediaserver.external.HttpValidators;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the steps the resolve goal takes for an artifact item that is
+ * extracted from a downloaded archive, against an HTTP server embedded in
+ * the benchmark: an uncached download that is stored in the download cache
+ * and extracted, a download the server reports as unchanged, and a
+ * download found in the download cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveBenchmark {
+
+	private static final List<String> ALGORITHMS = Arrays.asList(DigestCalculator.MD5, DigestCalculator.SHA1);
+	private static final String ETAG = "\"benchmark\"";
+	private static final String EXTRACT_FILE = "lib/dir15/file0255.bin";
+
+	/** The archive format */
+	@Param({"zip", "tar.gz"})
+	public String format;
+
+	private File directory;
+	private byte[] archive;
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private URL url;
+	private HttpValidators validators;
+	private DownloadCache cache;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = BenchmarkFiles.createTempDirectory("resolve-benchmark");
+		File tree = new File(directory, "tree");
+		BenchmarkFiles.writeTree(tree, 256, 128 * 1024);
+		File archiveFile = new File(directory, "archive." + format);
+		new ArchivePacker(6, 1, true).pack(tree, archiveFile);
+		archive = Files.readAllBytes(archiveFile.toPath());
+		BenchmarkFiles.delete(tree);
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					exchange.getResponseHeaders().set("ETag", ETAG);
+					if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+						exchange.sendResponseHeaders(304, -1);
+						return;
+					}
+					exchange.sendResponseHeaders(200, archive.length);
+					try (OutputStream os = exchange.getResponseBody()) {
+						os.write(archive);
+					}
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newFixedThreadPool(4);
+		server.setExecutor(serverExecutor);
+		server.start();
+		url = new URL("http", "127.0.0.1", server.getAddress().getPort(), "/archive." + format);
+		validators = new HttpValidators(url.toExternalForm(), ETAG, null, archive.length);
+
+		// The cache for the cached benchmark, the other benchmarks use their own
+		cache = new DownloadCache(new File(directory, "cache"));
+		File cacheFile = cache.getFile(url, null, format);
+		if (!cacheFile.getParentFile().mkdirs()) {
+			throw new IOException("Could not create folder: " + cacheFile.getParent());
+		}
+		Files.write(cacheFile.toPath(), archive);
+	}
+
+	@Setup(Level.Invocation)
+	public void createOutput() throws IOException {
+		output = BenchmarkFiles.createTempDirectory("resolve-benchmark-output");
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteOutput() {
+		BenchmarkFiles.delete(output);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+		BenchmarkFiles.delete(directory);
+	}
+
+	/**
+	 * Downloads the archive while calculating its checksums, stores it in
+	 * an empty download cache and extracts the artifact from it.
+	 */
+	@Benchmark
+	public Map<String, DigestedFile> downloadAndExtract() throws IOException {
+		DownloadCache emptyCache = new DownloadCache(new File(output, "cache"));
+		File cacheFile = emptyCache.getFile(url, null, format);
+		File partFile = emptyCache.createPartFile("archive");
+
+		DigestCalculator calculator = new DigestCalculator(ALGORITHMS);
+		HttpTransfer transfer = new HttpTransfer(url, 10000, null, null);
+		transfer.get(partFile, null, false, calculator);
+		calculator.getDigests();
+		emptyCache.store(partFile, cacheFile);
+
+		return extract(cacheFile);
+	}
+
+	/**
+	 * Asks the server if the staged archive has changed.
+	 */
+	@Benchmark
+	public boolean notModified() throws IOException {
+		HttpTransfer transfer = new HttpTransfer(url, 10000, null, null);
+		return transfer.get(new File(output, "archive." + format), validators, false, new DigestCalculator(ALGORITHMS));
+	}
+
+	/**
+	 * Finds the archive in the download cache and extracts the artifact
+	 * from it.
+	 */
+	@Benchmark
+	public Map<String, DigestedFile> cachedExtract() throws IOException {
+		File cacheFile = cache.getFile(url, null, format);
+		if (!cache.lookup(cacheFile)) {
+			throw new IllegalStateException("The archive isn't cached");
+		}
+		return extract(cacheFile);
+	}
+
+	private Map<String, DigestedFile> extract(File archiveFile) throws IOException {
+		ArchiveExtractor extractor = new ArchiveExtractor(archiveFile, ALGORITHMS);
+		extractor.add(EXTRACT_FILE, new File(output, "artifact.bin"), null);
+		Map<String, DigestedFile> extracted = extractor.extract();
+		if (!extracted.containsKey(EXTRACT_FILE)) {
+			throw new IllegalStateException(EXTRACT_FILE + " wasn't found in the archive");
+		}
+		return extracted;
+	}
+}
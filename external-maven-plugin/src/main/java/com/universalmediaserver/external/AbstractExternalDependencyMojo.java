@@ -24,19 +24,32 @@ import java.io.IOException;
 import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadata;
 import org.apache.maven.artifact.installer.ArtifactInstallationException;
 import org.apache.maven.artifact.installer.ArtifactInstaller;
 import org.apache.maven.artifact.manager.WagonConfigurationException;
@@ -49,6 +62,7 @@ import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.install.AbstractInstallMojo;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.artifact.ProjectArtifactMetadata;
 import org.apache.maven.repository.RepositorySystem;
@@ -70,7 +84,6 @@ import org.apache.maven.wagon.UnsupportedProtocolException;
 import org.apache.maven.wagon.Wagon;
 import org.apache.maven.wagon.authentication.AuthenticationException;
 import org.apache.maven.wagon.authorization.AuthorizationException;
-import org.apache.maven.wagon.observers.Debug;
 import org.apache.maven.wagon.proxy.ProxyInfo;
 import org.apache.maven.wagon.repository.Repository;
 import org.codehaus.plexus.archiver.Archiver;
@@ -79,17 +92,9 @@ import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
 import org.codehaus.plexus.archiver.util.DefaultFileSet;
-import org.codehaus.plexus.digest.Digester;
-import org.codehaus.plexus.digest.DigesterException;
-import org.codehaus.plexus.digest.Md5Digester;
-import org.codehaus.plexus.digest.Sha1Digester;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.WriterFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
  * Base class for all goals in this plugin.
@@ -211,6 +216,53 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 */
 	protected boolean centralChecksumVerification;
 
+	/**
+	 * The URL of the Central Repository search API used for checksum
+	 * verification. It can point to a mirror or a local stand-in.
+	 *
+	 * @parameter property="external.centralLookupUrl" default-value="https://search.maven.org/solrsearch/select"
+	 */
+	protected String centralLookupUrl;
+
+	/**
+	 * The directory Central Repository checksum lookups are cached in.
+	 *
+	 * @parameter property="external.centralLookupCacheDirectory" default-value="${user.home}/.m2/external-central-lookup-cache"
+	 */
+	protected String centralLookupCacheDirectory;
+
+	/**
+	 * The number of hours a Central Repository checksum lookup that found
+	 * artifacts is cached. 0 means it isn't reused.
+	 *
+	 * @parameter property="external.centralLookupCacheTtl" default-value="168"
+	 */
+	protected int centralLookupCacheTtl;
+
+	/**
+	 * The number of hours a Central Repository checksum lookup that found
+	 * no artifacts is cached. 0 means it isn't reused.
+	 *
+	 * @parameter property="external.centralLookupNegativeCacheTtl" default-value="24"
+	 */
+	protected int centralLookupNegativeCacheTtl;
+
+	/**
+	 * Flag that indicates whether Central Repository checksum verification
+	 * should only use cached lookups. Verification is skipped for checksums
+	 * that aren't cached.
+	 *
+	 * @parameter property="external.centralLookupOffline" default-value="${settings.offline}"
+	 */
+	protected boolean centralLookupOffline;
+
+	/**
+	 * Timeout in milliseconds for Central Repository checksum lookups.
+	 *
+	 * @parameter property="external.centralLookupTimeout" default-value="10000"
+	 */
+	protected int centralLookupTimeout;
+
 	/**
 	 * Flag that indicates whether to create checksums (MD5, SHA-1) or not.
 	 *
@@ -226,16 +278,155 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 */
 	protected boolean disableSSLValidation;
 
+	/**
+	 * The maximum number of artifact items to process concurrently. Values
+	 * less than 2 process the items one at a time.
+	 *
+	 * @parameter property="external.threads" default-value="1"
+	 */
+	protected int threads;
+
+	/**
+	 * Flag that indicates whether downloads should be kept in the persistent
+	 * download cache and be reused from there.
+	 *
+	 * @parameter property="external.useDownloadCache" default-value="true"
+	 */
+	protected boolean useDownloadCache;
+
+	/**
+	 * The persistent download cache directory. It can be shared by any number
+	 * of projects and builds.
+	 *
+	 * @parameter property="external.downloadCacheDirectory" default-value="${user.home}/.m2/external-download-cache"
+	 */
+	protected String downloadCacheDirectory;
+
+	/**
+	 * The maximum size of the download cache in megabytes. The least recently
+	 * used downloads are deleted when it's exceeded. 0 means no limit.
+	 *
+	 * @parameter property="external.downloadCacheMaxSize" default-value="2048"
+	 */
+	protected long downloadCacheMaxSize;
+
+	/**
+	 * The number of days a download is kept in the download cache after it
+	 * was last used. 0 means no limit.
+	 *
+	 * @parameter property="external.downloadCacheMaxAge" default-value="30"
+	 */
+	protected int downloadCacheMaxAge;
+
+	/**
+	 * The compression level from 0 (no compression) to 9 (best compression)
+	 * of repacked zip, tar.gz and tgz archives.
+	 *
+	 * @parameter property="external.repackCompressionLevel" default-value="6"
+	 */
+	protected int repackCompressionLevel;
+
+	/**
+	 * The number of threads used to compress a repacked zip, tar.gz or tgz
+	 * archive. 0 means one per available processor.
+	 *
+	 * @parameter property="external.repackThreads" default-value="0"
+	 */
+	protected int repackThreads;
+
+	/**
+	 * Flag that indicates whether repacked zip, tar and tar.gz archives
+	 * should be reproducible, using fixed timestamps and owners for all
+	 * entries, so that repacking the same files creates identical archives.
+	 *
+	 * @parameter property="external.repackReproducible" default-value="false"
+	 */
+	protected boolean repackReproducible;
+
+	/**
+	 * The directory the phase timing report of each goal is written to, as
+	 * <code>{goal}-metrics.json</code> and <code>{goal}-metrics.csv</code>.
+	 *
+	 * @parameter property="external.metricsDirectory" default-value="${project.build.directory}/external-metrics"
+	 */
+	protected String metricsDirectory;
+
 	/**
 	 * Newline constant
 	 */
 	protected final String NEWLINE = System.getProperty("line.separator");
 
+	/**
+	 * The repository ID download credentials are looked up by in the Maven
+	 * settings
+	 */
+	protected static final String DOWNLOAD_REPOSITORY_ID = "additonal-configs";
+
+	/**
+	 * Time in milliseconds, on top of the download timeouts, to wait for the
+	 * remaining artifact items to stop after a failure
+	 */
+	private static final long SHUTDOWN_GRACE_MILLIS = 10000;
+
+	/**
+	 * Holds the buffered log of the artifact item being processed by the
+	 * current thread during concurrent processing
+	 */
+	private final ThreadLocal<BufferedLog> artifactItemLog = new ThreadLocal<BufferedLog>();
+
+	/**
+	 * Serializes writes to the local repository, since concurrent installs
+	 * may update the same repository metadata
+	 */
+	private final Object installLock = new Object();
+
+	/**
+	 * The persistent download cache or <code>null</code> if it's disabled
+	 */
+	protected DownloadCache downloadCache;
+
+	/**
+	 * The transport for the downloads of this execution, created when first
+	 * needed
+	 */
+	private Transport transport;
+
+	/**
+	 * The Central Repository checksum lookup of this execution, created when
+	 * first needed
+	 */
+	private CentralLookup centralLookup;
+
+	/**
+	 * The phase timings of this execution
+	 */
+	protected final PhaseMetrics metrics = new PhaseMetrics();
+
+	/**
+	 * Processes a single artifact item.
+	 */
+	protected interface ArtifactItemHandler {
+
+		/**
+		 * Processes an artifact item.
+		 *
+		 * @param artifactItem the artifact item to process
+		 * @throws MojoExecutionException MojoExecutionException
+		 * @throws MojoFailureException MojoFailureException
+		 */
+		void handle(ArtifactItem artifactItem) throws MojoExecutionException, MojoFailureException;
+	}
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		// Super class lack a default value and requires it to be set manually
 		super.localRepository = this.localRepository;
 
+		if (useDownloadCache && downloadCacheDirectory != null && !downloadCacheDirectory.isEmpty()) {
+			downloadCache = new DownloadCache(new File(downloadCacheDirectory));
+			getLog().debug("Using download cache: " + downloadCache.getDirectory().getAbsolutePath());
+		}
+
 		if (disableSSLValidation) {
 			try {
 				SSLContext sslContext = SSLContext.getInstance("SSL");
@@ -249,6 +440,176 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 		}
 	}
 
+	/**
+	 * Returns the log for the artifact item processed by the current thread
+	 * if items are processed concurrently, otherwise the mojo log.
+	 */
+	@Override
+	public Log getLog() {
+		Log log = artifactItemLog.get();
+		return log != null ? log : super.getLog();
+	}
+
+	/**
+	 * Runs <code>handler</code> for all configured artifact items. If
+	 * {@link #threads} is greater than 1, up to that many items are
+	 * processed concurrently and the log output of each item is held back
+	 * until the item is done. The first failure aborts the remaining items.
+	 *
+	 * @param handler the handler to run for each artifact item
+	 * @throws MojoExecutionException MojoExecutionException
+	 * @throws MojoFailureException MojoFailureException
+	 */
+	protected void processArtifactItems(final ArtifactItemHandler handler) throws MojoExecutionException, MojoFailureException {
+		if (threads < 2 || artifactItems.size() < 2) {
+			for (ArtifactItem artifactItem : artifactItems) {
+				handler.handle(artifactItem);
+			}
+			return;
+		}
+
+		final Log log = super.getLog();
+		int poolSize = Math.min(threads, artifactItems.size());
+		log.debug("Processing artifact items using " + poolSize + " threads");
+
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+		try {
+			for (final ArtifactItem artifactItem : artifactItems) {
+				completionService.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						BufferedLog bufferedLog = new BufferedLog(log);
+						artifactItemLog.set(bufferedLog);
+						try {
+							handler.handle(artifactItem);
+						} finally {
+							artifactItemLog.remove();
+							bufferedLog.flush();
+						}
+						return null;
+					}
+				});
+			}
+
+			for (int i = 0; i < artifactItems.size(); i++) {
+				try {
+					completionService.take().get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof MojoExecutionException) {
+						throw (MojoExecutionException) cause;
+					} else if (cause instanceof MojoFailureException) {
+						throw (MojoFailureException) cause;
+					}
+					throw new MojoExecutionException("Processing of artifact item failed: " + cause.getMessage(), cause);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while processing artifact items", e);
+		} finally {
+			executor.shutdownNow();
+			awaitTermination(executor, log);
+		}
+	}
+
+	/**
+	 * Waits for the artifact items that are still being processed after
+	 * {@link ExecutorService#shutdownNow()}. Transfers don't react to
+	 * interrupts, so they may continue until they complete or time out, and
+	 * must not outlive the transports and files they're using.
+	 *
+	 * @param executor the executor that was shut down
+	 * @param log the log to warn about items that didn't finish in time
+	 */
+	private void awaitTermination(ExecutorService executor, Log log) {
+		long timeout = 0;
+		for (ArtifactItem artifactItem : artifactItems) {
+			timeout = Math.max(timeout, artifactItem.getTimeout());
+		}
+		// Allow a connect and a read timeout, and some time to clean up
+		timeout = 2 * timeout + SHUTDOWN_GRACE_MILLIS;
+		try {
+			if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+				log.warn("Some artifact items were still being processed " + timeout + " ms after the execution was aborted");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Deletes the temporary files downloaded during this execution.
+	 *
+	 * @param downloads the downloads to delete
+	 */
+	protected void deleteTemporaryDownloads(DownloadRegistry downloads) {
+		List<File> tempDownloadFiles = new ArrayList<File>();
+		for (File downloadFile : downloads.getFiles()) {
+			// Files in the download cache are kept
+			if (downloadCache == null || !downloadCache.contains(downloadFile)) {
+				tempDownloadFiles.add(downloadFile);
+			}
+		}
+
+		for (File directory : downloads.getTemporaryDirectories()) {
+			getLog().debug("Deleting folder: " + directory.getAbsolutePath());
+			deleteDirectory(directory);
+		}
+
+		if (!tempDownloadFiles.isEmpty()) {
+			getLog().info("Deleting temporary download files");
+
+			// We're done with the temporary files so lets delete them
+			for (File tempDownloadFile : tempDownloadFiles) {
+				getLog().debug("Deleting file: " + tempDownloadFile.getAbsolutePath());
+				if (!tempDownloadFile.delete()) {
+					getLog().warn("Could not delete temporary file: " + tempDownloadFile.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries from the download cache until
+	 * it's within the configured size and age limits.
+	 */
+	protected void evictDownloadCache() {
+		if (downloadCache != null) {
+			int evicted = downloadCache.evict(
+				Math.max(downloadCacheMaxSize, 0) * 1024 * 1024,
+				Math.max(downloadCacheMaxAge, 0) * 24L * 60 * 60 * 1000
+			);
+			if (evicted > 0) {
+				getLog().info("Evicted " + evicted + " downloads from the download cache");
+			}
+		}
+	}
+
+	/**
+	 * Logs a summary of the phase timings of this execution and writes them
+	 * to the {@link #metricsDirectory}.
+	 *
+	 * @param goal the goal, used to name the report files
+	 */
+	protected void reportMetrics(String goal) {
+		if (metrics.isEmpty()) {
+			return;
+		}
+		metrics.logSummary(getLog());
+		if (metricsDirectory != null && !metricsDirectory.isEmpty()) {
+			File directory = new File(metricsDirectory);
+			try {
+				metrics.write(directory, goal + "-metrics");
+				getLog().debug("Wrote phase timings to " + directory.getAbsolutePath());
+			} catch (IOException e) {
+				getLog().warn("Could not write phase timings to " + directory.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Create Maven Artifact object from ArtifactItem configuration descriptor.
 	 *
@@ -327,25 +688,45 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	/**
 	 * Verifies a checksum for the specified file.
 	 *
-	 * @param targetFile the path to the file from which the checksum is
-	 * verified, must not be <code>null</code>.
-	 * @param digester the checksum algorithm to use, must not be <code>null</code>.
+	 * @param targetFile the file from which the checksum is verified, must
+	 * not be <code>null</code>.
+	 * @param algorithm the checksum algorithm to use, must not be <code>null</code>.
 	 * @param checksum the checksum to verify.
 	 * @return The result
 	 * @throws MojoExecutionException
-	 *             If the checksum could not be installed.
+	 *             If the checksum could not be calculated.
 	 */
-	protected boolean verifyChecksum(File targetFile, Digester digester, String checksum) throws MojoExecutionException {
-		getLog().debug("Calculating " + digester.getAlgorithm() + " checksum for " + targetFile);
+	protected boolean verifyChecksum(DigestedFile targetFile, String algorithm, String checksum) throws MojoExecutionException {
+		getLog().debug("Verifying " + algorithm + " checksum for " + targetFile.getFile());
 		try {
-			String calculatedChecksum = digester.calc(targetFile);
+			String calculatedChecksum = targetFile.getDigest(algorithm);
 			getLog().debug("Generated checksum : " + calculatedChecksum);
 			getLog().debug("Expected checksum  : " + checksum);
-			return calculatedChecksum.equals(checksum);
-		} catch (DigesterException e) {
-			throw new MojoExecutionException("Failed to calculate " + digester.getAlgorithm() + " checksum for "
-				+ targetFile, e);
+			return calculatedChecksum.equalsIgnoreCase(checksum.trim());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to calculate " + algorithm + " checksum for "
+				+ targetFile.getFile(), e);
+		}
+	}
+
+	/**
+	 * Returns the algorithm of a configured checksum.
+	 *
+	 * @param artifactItem the artifact item the checksum is configured for
+	 * @param checksum the checksum
+	 * @return The algorithm
+	 * @throws MojoExecutionException if the algorithm isn't recognized
+	 */
+	protected String getChecksumAlgorithm(ArtifactItem artifactItem, String checksum) throws MojoExecutionException {
+		String algorithm = DigestCalculator.getAlgorithm(checksum);
+		if (algorithm == null) {
+			throw new MojoExecutionException(String.format(
+				"Invalid checksum \"%s\" for artifact %s; must be a hexadecimal MD5, SHA-1, SHA-256 or SHA-512 checksum",
+				checksum,
+				artifactItem.toString()
+			));
 		}
+		return algorithm;
 	}
 
 	/**
@@ -356,39 +737,29 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 * @throws MojoExecutionException the mojo execution exception
 	 * @throws MojoFailureException the mojo failure exception
 	 */
-	protected void verifyArtifactItemChecksum(ArtifactItem artifactItem, File targetFile) throws MojoExecutionException, MojoFailureException {
+	protected void verifyArtifactItemChecksum(ArtifactItem artifactItem, DigestedFile targetFile) throws MojoExecutionException, MojoFailureException {
 
 		// If a checksum was specified, we must verify the checksum against the downloaded file
 		if (artifactItem.hasChecksum()) {
 			getLog().info(String.format(
 				"Verifying checksum on downloaded file %s: %s",
-				targetFile.getName(),
+				targetFile.getFile().getName(),
 				artifactItem.getChecksum()
 			));
 
-			// Perform SHA1 checksum verification
-			getLog().debug("Testing for SHA1 checksum on artifact " + artifactItem.toString());
-			if (!verifyChecksum(targetFile, new Sha1Digester(), artifactItem.getChecksum())) {
-				getLog().debug("Verification failed on SHA1 checksum for file: " + targetFile.getAbsolutePath());
-				getLog().debug("Testing for MD5 checksum on artifact: " + artifactItem.toString());
-
-				// Did not pass MD5 checksum verification, now test SHA1 checksum
-				if (!verifyChecksum(targetFile, new Md5Digester(), artifactItem.getChecksum())) {
-					// Checksum verification failed, throw error
-					throw new MojoFailureException(
-						"Both SHA1 and MD5 checksum verification failed for: " + NEWLINE +
-						"  groupId    : " + artifactItem.getGroupId() + NEWLINE +
-						"  artifactId : " + artifactItem.getArtifactId() + NEWLINE +
-						"  version    : " + artifactItem.getVersion() + NEWLINE +
-						"  checksum   : " + artifactItem.getChecksum() + NEWLINE +
-						"  file       : " + targetFile.getAbsolutePath()
-					);
-				} else {
-					getLog().info("Verification passed on MD5 checksum for artifact: " + artifactItem.toString());
-				}
-			} else {
-				getLog().info("Verification passed on SHA1 checksum for artifact: " + artifactItem.toString());
+			String algorithm = getChecksumAlgorithm(artifactItem, artifactItem.getChecksum());
+			if (!verifyChecksum(targetFile, algorithm, artifactItem.getChecksum())) {
+				// Checksum verification failed, throw error
+				throw new MojoFailureException(
+					algorithm + " checksum verification failed for: " + NEWLINE +
+					"  groupId    : " + artifactItem.getGroupId() + NEWLINE +
+					"  artifactId : " + artifactItem.getArtifactId() + NEWLINE +
+					"  version    : " + artifactItem.getVersion() + NEWLINE +
+					"  checksum   : " + artifactItem.getChecksum() + NEWLINE +
+					"  file       : " + targetFile.getFile().getAbsolutePath()
+				);
 			}
+			getLog().info("Verification passed on " + algorithm + " checksum for artifact: " + artifactItem.toString());
 		}
 	}
 
@@ -401,69 +772,37 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 * @throws MojoExecutionException MojoExecutionException
 	 * @throws MojoFailureException MojoFailureException
 	 */
-	protected void verifyArtifactItemExtractFileChecksum(ArtifactItem artifactItem, File targetFile) throws MojoExecutionException, MojoFailureException {
+	protected void verifyArtifactItemExtractFileChecksum(ArtifactItem artifactItem, DigestedFile targetFile) throws MojoExecutionException, MojoFailureException {
 
 		// If a checksum was specified, we must verify the checksum against the extracted file
 		if (artifactItem.hasExtractFileChecksum()) {
 			getLog().info(String.format(
 				"Verifying checksum on extracted file %s: %s",
-				targetFile.getName(),
+				targetFile.getFile().getName(),
 				artifactItem.getExtractFileChecksum()
 			));
 
-			// Perform SHA1 checksum verification
-			getLog().debug("Testing for SHA1 checksum on artifact: " + artifactItem.toString());
-			if (!verifyChecksum(targetFile, new Sha1Digester(), artifactItem.getExtractFileChecksum())) {
-				getLog().debug("Verification failed on SHA1 checksum for extracted file: " + targetFile.getAbsolutePath());
-				getLog().info("Testing for MD5 checksum on artifact: " + artifactItem.toString());
-
-				// Did not pass SHA1 checksum verification, now test MD5 checksum
-				if (!verifyChecksum(targetFile, new Md5Digester(), artifactItem.getExtractFileChecksum())) {
-					// checksum verification failed, throw error
-					throw new MojoFailureException(
-						"Both MD5 and SHA1 checksum verification failed for: " + NEWLINE +
-						"  groupId        : " + artifactItem.getGroupId() + NEWLINE +
-						"  artifactId     : " + artifactItem.getArtifactId() + NEWLINE +
-						"  version        : " + artifactItem.getVersion() + NEWLINE +
-						"  checksum       : " + artifactItem.getExtractFileChecksum() + NEWLINE +
-						"  extracted file : " + targetFile.getAbsolutePath());
-				} else {
-					getLog().info("Verification passed on MD5 checksum for artifact: " + artifactItem.toString());
-				}
-			} else {
-				getLog().info("Verification passed on SHA1 checksum for artifact: " + artifactItem.toString());
+			String algorithm = getChecksumAlgorithm(artifactItem, artifactItem.getExtractFileChecksum());
+			if (!verifyChecksum(targetFile, algorithm, artifactItem.getExtractFileChecksum())) {
+				// checksum verification failed, throw error
+				throw new MojoFailureException(
+					algorithm + " checksum verification failed for: " + NEWLINE +
+					"  groupId        : " + artifactItem.getGroupId() + NEWLINE +
+					"  artifactId     : " + artifactItem.getArtifactId() + NEWLINE +
+					"  version        : " + artifactItem.getVersion() + NEWLINE +
+					"  checksum       : " + artifactItem.getExtractFileChecksum() + NEWLINE +
+					"  extracted file : " + targetFile.getFile().getAbsolutePath());
 			}
+			getLog().info("Verification passed on " + algorithm + " checksum for artifact: " + artifactItem.toString());
 		}
 	}
 
-	/**
-	 * Gets the text content of a named attribute from a <code>Node</code>
-	 * or <code>null</code> if it doesn't exist.
-	 * @param node the node to search
-	 * @return The text content of the node or <code>null</code>
-	 */
-
-	private String getAttribute(Node node, String attributeName) {
-		Node attributeNode = node.getAttributes().getNamedItem(attributeName);
-		if (attributeNode != null) {
-			return attributeNode.getTextContent();
-		}
-		else return null;
-	}
-
-	/**
-	 * Checks if a named attribute exists for a give <code>Node</code>.
-	 * @param node the node to search
-	 * @return The result
-	 */
-	private boolean hasAttribute(Node node, String attributeName) {
-		return getAttribute(node, attributeName) != null;
-	}
-
 	/**
 	 * Validate downloaded file artifact checksum does not match another
 	 * artifact's checksum that already exists in the central Maven repository.
-	 * Using the search.maven.org REST API to perform a checksum lookup.
+	 * Using the search.maven.org REST API, or the configured
+	 * <code>centralLookupUrl</code>, to perform a checksum lookup. Lookups
+	 * are cached in <code>centralLookupCacheDirectory</code>.
 	 *
 	 * @since 0.1
 	 *
@@ -472,7 +811,7 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 * @throws MojoExecutionException MojoExecutionException
 	 * @throws MojoFailureException MojoFailureException
 	 */
-	protected void verifyArtifactItemChecksumByCentralLookup(ArtifactItem artifactItem, File targetFile)
+	protected void verifyArtifactItemChecksumByCentralLookup(ArtifactItem artifactItem, DigestedFile targetFile)
 		throws MojoExecutionException, MojoFailureException {
 		// Skip this artifact checksum verification?
 		if (centralChecksumVerification == false && artifactItem.getCentralChecksumVerification() == false) {
@@ -482,26 +821,20 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 		boolean artifactMismatch = false;
 		StringBuilder detectedArtifacts = new StringBuilder();
 
-		// Calculate SHA1 checksum
-		digester.calculate(targetFile);
-		String sha1Checksum = digester.getSha1();
+		// Get the SHA1 checksum
+		String sha1Checksum;
+		try {
+			sha1Checksum = targetFile.getDigest(DigestCalculator.SHA1);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to calculate SHA1 checksum for " + targetFile.getFile(), e);
+		}
 		getLog().debug("Performing Central Repository lookup on artifact SHA1 checksum: " + sha1Checksum);
 
 		// perform REST query against Central Repository checksum lookup API
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder;
+		CentralLookup.Result result;
 		try {
-			builder = dbf.newDocumentBuilder();
-		} catch (ParserConfigurationException e1) {
-			getLog().error("Could not create XML Document parser: " + e1.getMessage());
-			getLog().info("Skipping Central Repository checksum verification");
-			getLog().debug(e1);
-			return;
-		}
-		Document document;
-		try {
-			document = builder.parse(String.format("http://search.maven.org/solrsearch/select?q=1:\"%s\"&rows=20&wt=xml", sha1Checksum));
-		} catch (SAXException e) {
+			result = getCentralLookup().lookup(sha1Checksum);
+		} catch (XMLStreamException e) {
 			getLog().error("Could not parse Central Repository response: " + e.getMessage());
 			getLog().info("Skipping Central Repository checksum verification");
 			getLog().debug(e);
@@ -512,95 +845,71 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 			getLog().debug(e);
 			return;
 		}
-		NodeList artifactList = document.getElementsByTagName("doc");
+		if (result == null) {
+			getLog().warn(
+				"Central Repository lookup of " + sha1Checksum + " isn't cached and lookups are offline, " +
+				"skipping Central Repository checksum verification"
+			);
+			return;
+		}
+		if (result.isCached()) {
+			getLog().debug("Using cached Central Repository lookup of " + sha1Checksum);
+		}
 
 		// were any results returned?
-		if (artifactList != null && artifactList.getLength() > 0) {
-
-			int nodeCount = 0;
-			NodeList resultNodes = document.getElementsByTagName("result");
-			int resultNodesLength = resultNodes.getLength();
-			for (int i = 0; i < resultNodesLength; i++) {
-				Node node = resultNodes.item(i);
-				if (
-					hasAttribute(node, "name") && hasAttribute(node, "numFound") &&
-					getAttribute(node, "name").equalsIgnoreCase("response")
-				) {
-					try {
-						nodeCount = Integer.parseInt(getAttribute(node, "numFound"));
-						break;
-					} catch (NumberFormatException e) {
-						nodeCount = 0;
-					}
-				}
-			}
-			// If we can't interpret the results, use the list length (although it might be truncated)
-			if (nodeCount == 0) {
-				nodeCount = artifactList.getLength();
-			}
-
+		if (!result.getArtifacts().isEmpty()) {
 			getLog().info(
-				nodeCount + " existing artifacts found in Central Repository checksum lookup, verifying artifact GAV");
+				result.getNumFound() + " existing artifacts found in Central Repository checksum lookup, verifying artifact GAV");
 
 			/*
 			 * Iterate over all the query returned artifact definitions and
 			 * attempt to determine if any of the returned artifact GAV do
 			 * no match the GAV of the attempted install artifact.
 			 */
-			int artifactListLength = artifactList.getLength();
-			for (int index = 0; index < artifactListLength; index++) {
-				Node artifactNode = artifactList.item(index);
-				if (artifactNode.hasChildNodes()) {
-					NodeList children = artifactNode.getChildNodes();
-					for (int loop = 0; loop < children.getLength(); loop++) {
-						Node artifactProperty = children.item(loop);
-
-						// We only inspect the strings with "name" attribute
-						if (!artifactProperty.getNodeName().equals("str") || !hasAttribute(artifactProperty, "name")) {
-							continue;
-						}
-
-						String propertyName = getAttribute(artifactProperty, "name");
-						// Append returned artifact property names to an output message string
-						detectedArtifacts.append(
-							"       " + propertyName + " : " + artifactProperty.getTextContent() + NEWLINE
-						);
+			for (Map<String, String> artifactProperties : result.getArtifacts()) {
+				for (Entry<String, String> artifactProperty : artifactProperties.entrySet()) {
+					String propertyName = artifactProperty.getKey();
+					String propertyValue = artifactProperty.getValue();
+
+					// Append returned artifact property names to an output message string
+					detectedArtifacts.append(
+						"       " + propertyName + " : " + propertyValue + NEWLINE
+					);
 
-						if (propertyName.equalsIgnoreCase("a")) {
-							/*
-							 * Attempt to validate the returned artifact's
-							 * ArtifactId against the target install artifact
-							 */
-							if (!artifactProperty.getTextContent().equalsIgnoreCase(artifactItem.getArtifactId())) {
-								getLog().error(
-									"Artifact id found in Central Repository lookup does not match: " +
-									artifactProperty.getTextContent() + " != " + artifactItem.getArtifactId());
-								artifactMismatch = true;
-							}
-						} else if (propertyName.equalsIgnoreCase("g")) {
-							/*
-							 * Attempt to validate the returned artifact's
-							 * GroupId against the target install artifact
-							 */
-							if (!artifactProperty.getTextContent().equalsIgnoreCase(artifactItem.getGroupId())) {
-								getLog().error(
-									"Artifact group id found in Central Repository lookup does not match: " +
-									 artifactProperty.getTextContent() + " != " + artifactItem.getGroupId());
-								artifactMismatch = true;
-							}
-						} else if (
-							propertyName.equalsIgnoreCase("v") &&
-							!artifactProperty.getTextContent().equalsIgnoreCase(artifactItem.getVersion())
-						) {
-							/*
-							 * Attempt to validate the returned artifact's
-							 * Version against the target install artifact
-							 */
+					if (propertyName.equalsIgnoreCase("a")) {
+						/*
+						 * Attempt to validate the returned artifact's
+						 * ArtifactId against the target install artifact
+						 */
+						if (!propertyValue.equalsIgnoreCase(artifactItem.getArtifactId())) {
+							getLog().error(
+								"Artifact id found in Central Repository lookup does not match: " +
+								propertyValue + " != " + artifactItem.getArtifactId());
+							artifactMismatch = true;
+						}
+					} else if (propertyName.equalsIgnoreCase("g")) {
+						/*
+						 * Attempt to validate the returned artifact's
+						 * GroupId against the target install artifact
+						 */
+						if (!propertyValue.equalsIgnoreCase(artifactItem.getGroupId())) {
 							getLog().error(
-								"Artifact version found in Central Repository lookup does not match: " +
-								artifactProperty.getTextContent() + " != " + artifactItem.getVersion());
+								"Artifact group id found in Central Repository lookup does not match: " +
+								propertyValue + " != " + artifactItem.getGroupId());
 							artifactMismatch = true;
 						}
+					} else if (
+						propertyName.equalsIgnoreCase("v") &&
+						!propertyValue.equalsIgnoreCase(artifactItem.getVersion())
+					) {
+						/*
+						 * Attempt to validate the returned artifact's
+						 * Version against the target install artifact
+						 */
+						getLog().error(
+							"Artifact version found in Central Repository lookup does not match: " +
+							propertyValue + " != " + artifactItem.getVersion());
+						artifactMismatch = true;
 					}
 				}
 
@@ -620,7 +929,7 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 				"       artifactId : " + artifactItem.getArtifactId() + NEWLINE +
 				"       version    : " + artifactItem.getVersion() + NEWLINE +
 				"       checksum   : " + sha1Checksum + NEWLINE +
-				"       file       : " + targetFile.getAbsolutePath() + NEWLINE + NEWLINE +
+				"       file       : " + targetFile.getFile().getAbsolutePath() + NEWLINE + NEWLINE +
 				"The following artifact(s) were detected using the same checksum:" + NEWLINE +
 				detectedArtifacts.toString() + NEWLINE +
 				"Please verify that the GAV defined on the target artifact is correct." + NEWLINE
@@ -675,79 +984,59 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 * @param artifactItem the artifact item
 	 * @param artifact the artifact
 	 * @param artifactFile the artifact file
-	 * @param cachedDownloads the cached downloads
+	 * @param downloads the downloads of this execution
+	 * @return The staged artifact file, or <code>null</code> if the server
+	 *         reported that the already staged file is current
 	 * @throws MojoExecutionException the mojo execution exception
 	 * @throws MojoFailureException the mojo failure exception
 	 */
-	protected void downloadArtifact(final ArtifactItem artifactItem, Artifact artifact, File artifactFile, Map<URL, File> cachedDownloads) throws MojoExecutionException, MojoFailureException {
+	protected DigestedFile downloadArtifact(final ArtifactItem artifactItem, final Artifact artifact, File artifactFile, final DownloadRegistry downloads) throws MojoExecutionException, MojoFailureException {
 
 		if (artifactItem.getDownloadUrl() != null) {
-			URL downloadUrl;
+			final URL downloadUrl;
 			try {
 				downloadUrl = new URL(artifactItem.getDownloadUrl());
 			} catch (MalformedURLException e1) {
 				throw new MojoExecutionException("Could not interpret URL " + artifactItem.getDownloadUrl(), e1);
 			}
 
-			final File tempDownloadFile;
-
-			if (cachedDownloads.containsKey(downloadUrl)) {
-				tempDownloadFile = cachedDownloads.get(downloadUrl);
+			if (downloads.contains(downloadUrl)) {
 				getLog().info(String.format("Artifact %s is already downloaded from URL", artifactItem.getDownloadUrl()));
-				getLog().debug("Using cached download: " + tempDownloadFile.getAbsolutePath());
-			} else {
-				// create a temporary download file
-				try {
-					tempDownloadFile = File.createTempFile(artifactItem.getLocalFile(), "." + getExtension(downloadUrl));
-				} catch (IOException e) {
-					throw new MojoExecutionException("Could not create temporary file", e);
-				}
-
-				getLog().info(
-					String.format("Downloading artifact %s from URL %s", artifactItem.toString(),
-					artifactItem.getDownloadUrl()
-				));
-				getLog().debug("Downloading artifact to temporary file: " + tempDownloadFile.getAbsolutePath());
-
-				String endPointUrl = downloadUrl.getProtocol() + "://" + downloadUrl.getAuthority();
-				Repository repository = new Repository("additonal-configs", endPointUrl);
-				Wagon wagon;
-				try {
-					wagon = wagonManager.getWagon(repository);
-				} catch (WagonConfigurationException | UnsupportedProtocolException e) {
-					throw new MojoExecutionException(String.format(
-						"Could not initialize protocol \"%s\": %s",
-						downloadUrl.getProtocol(),
-						e.getMessage()
-					), e);
-				}
-				if (getLog().isDebugEnabled()) {
-					Debug debug = new Debug();
-					wagon.addSessionListener(debug);
-					wagon.addTransferListener(debug);
-				}
-				wagon.setTimeout(artifactItem.getTimeout());
-
-				ProxyInfo proxyInfo = getProxyInfo();
+			}
 
-				try {
-					if (proxyInfo != null) {
-						wagon.connect(repository, wagonManager.getAuthenticationInfo(repository.getId()), proxyInfo);
-					} else {
-						wagon.connect(repository, wagonManager.getAuthenticationInfo(repository.getId()));
-					}
+			long start = System.nanoTime();
+			final boolean[] fetched = new boolean[1];
+			final HttpValidators conditional = getConditionalValidators(artifactItem, downloadUrl);
+			final DigestedFile download = downloads.get(downloadUrl, new Callable<DigestedFile>() {
 
-					wagon.get(downloadUrl.getPath().substring(1), tempDownloadFile);
-				} catch (ConnectionException | TransferFailedException | ResourceDoesNotExistException | AuthorizationException | AuthenticationException e) {
-					throw new MojoExecutionException(
-						"Failed to download artifact " + artifactItem.toString() + ": " + e.getMessage(), e
-					);
+				@Override
+				public DigestedFile call() throws MojoExecutionException, MojoFailureException {
+					fetched[0] = true;
+					return fetchDownload(artifactItem, artifact, downloadUrl, conditional, downloads);
 				}
+			});
+			if (!fetched[0]) {
+				// Another artifact item with the same URL did the download
+				metrics.add(artifactItem, PhaseMetrics.DOWNLOAD, start, 0, Boolean.TRUE);
+			}
+			if (download == null) {
+				getLog().info(String.format(
+					"URL %s hasn't changed since artifact %s was staged",
+					artifactItem.getDownloadUrl(),
+					artifactItem.toString()
+				));
+				return null;
+			}
 
-				getLog().debug("Caching temporary file for later: " + tempDownloadFile);
-				cachedDownloads.put(downloadUrl, tempDownloadFile);
+			// The validators are stored again once the new file is verified
+			if (!HttpValidators.delete(artifactFile)) {
+				getLog().warn("Could not delete \"" + HttpValidators.getFile(artifactFile).getAbsolutePath() + "\"");
 			}
 
+			final File tempDownloadFile = download.getFile();
+			getLog().debug("Using downloaded file: " + tempDownloadFile.getAbsolutePath());
+			DigestedFile stagedFile;
+
 			/*
 			 * Verify file checksum (if a checksum was defined).
 			 * MojoFailureException exception will be thrown if
@@ -758,7 +1047,7 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 			 * verification may thus be done several times for a
 			 * cached download.
 			 */
-			verifyArtifactItemChecksum(artifactItem, tempDownloadFile);
+			verifyArtifactItemChecksum(artifactItem, download);
 
 			/*
 			 * If this artifact is not configured to extract a file,
@@ -779,6 +1068,7 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 						e
 					);
 				}
+				stagedFile = download.forCopy(artifactFile);
 			} else {
 				/*
 				 * If this artifact is configured to extract a file,
@@ -789,99 +1079,721 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 					"Extracting target file from downloaded compressed file: " + artifactItem.getExtractFile()
 				);
 
-				File tempOutputDir = FileUtils.createTempFile(tempDownloadFile.getName(), ".dir", null);
-				if (!tempOutputDir.mkdirs()) {
-					throw new MojoExecutionException("Could not create temporary folder: " + tempOutputDir.getAbsolutePath());
-				}
-				File extractedFile = new File(tempOutputDir, artifactItem.getExtractFile());
-
-				UnArchiver unarchiver;
-				try {
-					unarchiver = archiverManager.getUnArchiver(tempDownloadFile);
-				} catch (NoSuchArchiverException e) {
-					if (tempDownloadFile.getName().endsWith(".gz")) {
-						try {
-							unarchiver = archiverManager.getUnArchiver("gzip");
-						} catch (NoSuchArchiverException e1) {
-							throw new MojoExecutionException(
-								"No gzip unarchiver available for: " + tempDownloadFile.getAbsolutePath(), e
-							);
-						}
-						unarchiver.setDestFile(extractedFile);
-					} else
-						throw new MojoExecutionException(
-							"No unarchiver available for archive type: " + tempDownloadFile.getAbsolutePath(), e
-						);
-				}
-
 				// Ensure the path exists to write the file to
 				File parentDirectory = artifactFile.getParentFile();
-				if (parentDirectory != null && !parentDirectory.exists() && !artifactFile.getParentFile().mkdirs()) {
-					throw new MojoExecutionException("Could not create folder: " + artifactFile.getParentFile().getAbsolutePath());
+				if (parentDirectory != null && !parentDirectory.isDirectory() && !parentDirectory.mkdirs() && !parentDirectory.isDirectory()) {
+					throw new MojoExecutionException("Could not create folder: " + parentDirectory.getAbsolutePath());
 				}
 
-				unarchiver.setSourceFile(tempDownloadFile);
-				if (unarchiver.getDestFile() == null)
-					unarchiver.setDestDirectory(tempOutputDir);
-				unarchiver.extract();
+				long extractStart = System.nanoTime();
+				if (ArchiveExtractor.supports(tempDownloadFile)) {
+					stagedFile = extractArtifactFile(artifactItem, artifact, artifactFile, downloadUrl, download, downloads);
+				} else {
+					stagedFile = unarchiveArtifactFile(artifactItem, artifact, artifactFile, tempDownloadFile);
+				}
+				metrics.add(artifactItem, PhaseMetrics.EXTRACT, extractStart, stagedFile.getFile().length(), null);
 
-				// If an archive entry was not found, then throw a Mojo exception
-				if (extractedFile.isFile()) {
-					try {
-						FileUtils.copyFile(extractedFile, artifactFile);
-					} catch (IOException e) {
-						throw new MojoExecutionException(
-							"Failed to copy \"" + extractedFile.getAbsolutePath() +
-							"\" to \"" + artifactFile.getAbsolutePath() + "\": " +
-							e.getMessage(), e
-						);
-					}
-				} else if (extractedFile.isDirectory() && artifactItem.isRepack()) {
-					Archiver archiver;
-					try {
-						archiver = archiverManager.getArchiver(artifactFile);
-					} catch (NoSuchArchiverException e) {
-						throw new MojoExecutionException(
-							"No unarchiver available for archive type: " + artifactFile.getAbsolutePath(), e
+				getLog().info("Extracted target file to staging path: " + artifactFile.getAbsolutePath());
+			}
+
+			// Update the artifact items local file property
+			try {
+				artifactItem.setLocalFile(artifactFile.getCanonicalPath());
+			} catch (IOException e) {
+				throw new MojoExecutionException(
+					"Failed to get canonical path for \"" + artifactFile.getAbsolutePath() + "\": " + e.getMessage(),
+					e
+				);
+			}
+
+			return stagedFile;
+		} else {
+			throw new MojoExecutionException("Download URL for " + artifactItem.toString() + "must be specified");
+		}
+	}
+
+	/**
+	 * Checks if an artifact item has to be downloaded, which is the case if
+	 * it isn't in the staging directory, it is a snapshot (can have changed),
+	 * or the artifact or the installation is forced.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param artifact the artifact
+	 * @param artifactFile the staging path
+	 * @return true if the artifact item has to be downloaded.
+	 */
+	protected boolean isDownloadNeeded(ArtifactItem artifactItem, Artifact artifact, File artifactFile) {
+		return !artifactFile.exists() || artifact.isSnapshot() || force || artifactItem.getForce();
+	}
+
+	/**
+	 * Returns the validators to make the download of an artifact item
+	 * conditional on. A conditional request is only made if every artifact
+	 * item that is downloaded from the same URL is already staged with the
+	 * same validators, so that they can all do without the file if the
+	 * server reports that it hasn't changed.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param downloadUrl the download URL
+	 * @return The validators or <code>null</code> if the download shouldn't
+	 *         be conditional
+	 */
+	protected HttpValidators getConditionalValidators(ArtifactItem artifactItem, URL downloadUrl) {
+		if (!HttpTransfer.supports(downloadUrl)) {
+			return null;
+		}
+
+		HttpValidators result = null;
+		for (ArtifactItem item : artifactItems) {
+			if (!artifactItem.getDownloadUrl().equals(item.getDownloadUrl())) {
+				continue;
+			}
+			File file = getFullyQualifiedArtifactFilePath(item);
+			if (!isDownloadNeeded(item, createArtifact(item), file)) {
+				continue;
+			}
+			if (!file.isFile()) {
+				return null;
+			}
+			HttpValidators validators = HttpValidators.load(file);
+			if (
+				validators == null || !validators.isUsable() ||
+				!downloadUrl.toExternalForm().equals(validators.getUrl()) ||
+				result != null && !result.equals(validators)
+			) {
+				return null;
+			}
+			result = validators;
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the HTTP validators of the download a verified artifact file
+	 * was staged from, so that later builds can check if it has changed.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param artifactFile the staged artifact file
+	 * @param downloads the downloads of this execution
+	 */
+	protected void storeHttpValidators(ArtifactItem artifactItem, File artifactFile, DownloadRegistry downloads) {
+		HttpValidators validators;
+		try {
+			validators = downloads.getValidators(new URL(artifactItem.getDownloadUrl()));
+		} catch (MalformedURLException e) {
+			return;
+		}
+		if (validators != null && validators.isUsable()) {
+			try {
+				validators.store(artifactFile);
+			} catch (IOException e) {
+				getLog().warn(String.format(
+					"Could not store HTTP validators for artifact %s: %s",
+					artifactItem.toString(),
+					e.getMessage()
+				));
+			}
+		}
+	}
+
+	/**
+	 * Extracts the configured file from a downloaded archive straight to the
+	 * staging path, or the configured directory if the artifact is repacked,
+	 * without unpacking anything else. If other artifact items extract other
+	 * entries from the same downloaded tar archive, the entries for all of
+	 * them are extracted in a single pass.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param artifact the artifact
+	 * @param artifactFile the staging path
+	 * @param downloadUrl the URL the archive was downloaded from
+	 * @param download the downloaded archive
+	 * @param downloads the downloads of this execution
+	 * @return The staged artifact file
+	 * @throws MojoExecutionException the mojo execution exception
+	 * @throws MojoFailureException the mojo failure exception
+	 */
+	protected DigestedFile extractArtifactFile(
+		ArtifactItem artifactItem,
+		Artifact artifact,
+		File artifactFile,
+		URL downloadUrl,
+		final DigestedFile download,
+		final DownloadRegistry downloads
+	) throws MojoExecutionException, MojoFailureException {
+		final File workParent = artifactFile.getAbsoluteFile().getParentFile();
+		DigestedFile extracted = null;
+
+		/*
+		 * Tar archives can only be read from the start, so find the entries
+		 * other artifact items need. Items that are already staged won't
+		 * take their entries, so they aren't extracted for them.
+		 */
+		final List<ArtifactItem> archiveItems = new ArrayList<ArtifactItem>();
+		if (!ArchiveExtractor.isRandomAccess(download.getFile())) {
+			for (ArtifactItem item : artifactItems) {
+				if (
+					item != artifactItem && item.hasExtractFile() &&
+					artifactItem.getDownloadUrl().equals(item.getDownloadUrl()) &&
+					!artifactItem.getExtractFile().equals(item.getExtractFile()) &&
+					isDownloadNeeded(item, createArtifact(item), getFullyQualifiedArtifactFilePath(item))
+				) {
+					archiveItems.add(item);
+				}
+			}
+		}
+
+		if (!archiveItems.isEmpty()) {
+			archiveItems.add(artifactItem);
+			extracted = downloads.takeExtracted(downloadUrl, artifactItem.getExtractFile(), new Callable<Map<String, DigestedFile>>() {
+
+				@Override
+				public Map<String, DigestedFile> call() throws IOException {
+					File workDirectory = Files.createTempDirectory(workParent.toPath(), ".extract").toFile();
+					downloads.addTemporaryDirectory(workDirectory);
+					Set<String> algorithms = new LinkedHashSet<String>();
+					for (ArtifactItem item : archiveItems) {
+						algorithms.addAll(getExtractAlgorithms(item));
+					}
+					ArchiveExtractor extractor = new ArchiveExtractor(download.getFile(), algorithms);
+					for (int i = 0; i < archiveItems.size(); i++) {
+						ArtifactItem item = archiveItems.get(i);
+						File itemDirectory = new File(workDirectory, Integer.toString(i));
+						extractor.add(
+							item.getExtractFile(),
+							new File(itemDirectory, new File(item.getExtractFile()).getName()),
+							item.isRepack() ? new File(itemDirectory, "repack") : null
 						);
 					}
-					archiver.setDestFile(artifactFile);
-					archiver.addFileSet(new DefaultFileSet(extractedFile));
+					return extractor.extract();
+				}
+			});
+
+			if (extracted != null && extracted.getFile().isFile()) {
+				extracted = moveExtractedFile(extracted, artifactFile);
+			}
+		}
+
+		/*
+		 * The entry is written or repacked to a temporary file next to the
+		 * staging path and only moved into place once it's complete, so
+		 * that a failure doesn't leave a partial file staged.
+		 */
+		File repackDirectory = null;
+		File tempFile = null;
+		try {
+			if (extracted == null) {
+				// Extract this artifact item's entry on its own
+				ArchiveExtractor extractor = new ArchiveExtractor(download.getFile(), getExtractAlgorithms(artifactItem));
+				if (artifactItem.isRepack()) {
+					repackDirectory = Files.createTempDirectory(workParent.toPath(), ".extract").toFile();
+				}
+				tempFile = Files.createTempFile(workParent.toPath(), ".extract", "-" + artifactFile.getName()).toFile();
+				extractor.add(artifactItem.getExtractFile(), tempFile, repackDirectory);
+				extracted = extractor.extract().get(artifactItem.getExtractFile());
+			}
+
+			if (extracted == null) {
+				throw extractFileNotFound(artifactItem, artifact);
+			} else if (extracted.getFile().isDirectory()) {
+				if (tempFile == null) {
+					tempFile = Files.createTempFile(workParent.toPath(), ".extract", "-" + artifactFile.getName()).toFile();
+				}
+				// Let the archiver create the archive rather than update it
+				Files.delete(tempFile.toPath());
+				repackArtifactFile(extracted.getFile(), tempFile);
+				extracted = new DigestedFile(tempFile);
+			}
+			if (!extracted.getFile().equals(artifactFile)) {
+				extracted = moveExtractedFile(extracted, artifactFile);
+			}
+			return extracted;
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Failed to extract \"" + artifactItem.getExtractFile() + "\" from \"" +
+				download.getFile().getAbsolutePath() + "\": " + e.getMessage(), e
+			);
+		} finally {
+			if (repackDirectory != null) {
+				deleteDirectory(repackDirectory);
+			}
+			if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+				getLog().warn("Could not delete temporary file: " + tempFile.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Moves an extracted file to the staging path, replacing the file
+	 * staged before.
+	 *
+	 * @param extracted the extracted file
+	 * @param artifactFile the staging path
+	 * @return The staged artifact file
+	 * @throws MojoExecutionException if the file could not be moved
+	 */
+	private DigestedFile moveExtractedFile(DigestedFile extracted, File artifactFile) throws MojoExecutionException {
+		try {
+			Files.move(extracted.getFile().toPath(), artifactFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Failed to move \"" + extracted.getFile().getAbsolutePath() +
+				"\" to \"" + artifactFile.getAbsolutePath() + "\": " +
+				e.getMessage(), e
+			);
+		}
+		return extracted.forCopy(artifactFile);
+	}
+
+	/**
+	 * Extracts the configured file from a downloaded archive using a Plexus
+	 * unarchiver. This handles the formats {@link ArchiveExtractor} doesn't.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param artifact the artifact
+	 * @param artifactFile the staging path
+	 * @param tempDownloadFile the downloaded archive
+	 * @return The staged artifact file
+	 * @throws MojoExecutionException the mojo execution exception
+	 */
+	protected DigestedFile unarchiveArtifactFile(ArtifactItem artifactItem, Artifact artifact, File artifactFile, File tempDownloadFile) throws MojoExecutionException {
+		File tempOutputDir = FileUtils.createTempFile(tempDownloadFile.getName(), ".dir", null);
+		if (!tempOutputDir.mkdirs()) {
+			throw new MojoExecutionException("Could not create temporary folder: " + tempOutputDir.getAbsolutePath());
+		}
+		try {
+			File extractedFile = new File(tempOutputDir, artifactItem.getExtractFile());
+
+			UnArchiver unarchiver;
+			try {
+				unarchiver = archiverManager.getUnArchiver(tempDownloadFile);
+			} catch (NoSuchArchiverException e) {
+				if (tempDownloadFile.getName().endsWith(".gz")) {
 					try {
-						archiver.createArchive();
-					} catch (ArchiverException | IOException e) {
+						unarchiver = archiverManager.getUnArchiver("gzip");
+					} catch (NoSuchArchiverException e1) {
 						throw new MojoExecutionException(
-							"Failed to create archive \"" + artifactFile.getAbsolutePath() + "\": " + e.getMessage(),
-							e
+							"No gzip unarchiver available for: " + tempDownloadFile.getAbsolutePath(), e
 						);
 					}
-				} else {
-					// Extraction failed, throw error
+					unarchiver.setDestFile(extractedFile);
+				} else
 					throw new MojoExecutionException(
-						"Could not find target artifact file to extract from downloaded resource:" + NEWLINE +
-						"  groupId      : " + artifact.getGroupId() + NEWLINE +
-						"  artifactId   : " + artifact.getArtifactId() + NEWLINE +
-						"  version      : " + artifact.getVersion() + NEWLINE +
-						"  extractFile  : " + artifactItem.getExtractFile() + NEWLINE +
-						"  download URL : " + artifactItem.getDownloadUrl()
+						"No unarchiver available for archive type: " + tempDownloadFile.getAbsolutePath(), e
 					);
-				}
+			}
 
-				getLog().info("Extracted target file to staging path: " + artifactFile.getAbsolutePath());
+			unarchiver.setSourceFile(tempDownloadFile);
+			if (unarchiver.getDestFile() == null)
+				unarchiver.setDestDirectory(tempOutputDir);
+			unarchiver.extract();
+
+			// If an archive entry was not found, then throw a Mojo exception
+			if (extractedFile.isFile()) {
+				try {
+					FileUtils.copyFile(extractedFile, artifactFile);
+				} catch (IOException e) {
+					throw new MojoExecutionException(
+						"Failed to copy \"" + extractedFile.getAbsolutePath() +
+						"\" to \"" + artifactFile.getAbsolutePath() + "\": " +
+						e.getMessage(), e
+					);
+				}
+			} else if (extractedFile.isDirectory() && artifactItem.isRepack()) {
+				repackArtifactFile(extractedFile, artifactFile);
+			} else {
+				// Extraction failed, throw error
+				throw extractFileNotFound(artifactItem, artifact);
 			}
+			return new DigestedFile(artifactFile);
+		} finally {
+			deleteDirectory(tempOutputDir);
+		}
+	}
 
-			// Update the artifact items local file property
+	/**
+	 * Creates the artifact file as an archive of a directory.
+	 * Zip, tar and tar.gz archives are created with {@link ArchivePacker}, other
+	 * formats with the Plexus archiver for the file type.
+	 *
+	 * @param directory the directory to archive
+	 * @param artifactFile the archive to create
+	 * @throws MojoExecutionException the mojo execution exception
+	 */
+	protected void repackArtifactFile(File directory, File artifactFile) throws MojoExecutionException {
+		if (ArchivePacker.supports(artifactFile)) {
+			if (repackCompressionLevel < 0 || repackCompressionLevel > 9) {
+				throw new MojoExecutionException(
+					"Invalid repackCompressionLevel " + repackCompressionLevel + ", it must be between 0 and 9"
+				);
+			}
+			int packThreads = repackThreads > 0 ? repackThreads : Runtime.getRuntime().availableProcessors();
+			getLog().debug("Repacking " + artifactFile.getName() + " using " + packThreads + " threads");
 			try {
-				artifactItem.setLocalFile(artifactFile.getCanonicalPath());
+				new ArchivePacker(repackCompressionLevel, packThreads, repackReproducible).pack(directory, artifactFile);
 			} catch (IOException e) {
 				throw new MojoExecutionException(
-					"Failed to get canonical path for \"" + artifactFile.getAbsolutePath() + "\": " + e.getMessage(),
+					"Failed to create archive \"" + artifactFile.getAbsolutePath() + "\": " + e.getMessage(),
 					e
 				);
 			}
+			return;
+		}
+
+		Archiver archiver;
+		try {
+			archiver = archiverManager.getArchiver(artifactFile);
+		} catch (NoSuchArchiverException e) {
+			throw new MojoExecutionException(
+				"No unarchiver available for archive type: " + artifactFile.getAbsolutePath(), e
+			);
+		}
+		archiver.setDestFile(artifactFile);
+		archiver.addFileSet(new DefaultFileSet(directory));
+		try {
+			archiver.createArchive();
+		} catch (ArchiverException | IOException e) {
+			throw new MojoExecutionException(
+				"Failed to create archive \"" + artifactFile.getAbsolutePath() + "\": " + e.getMessage(),
+				e
+			);
+		}
+	}
+
+	/**
+	 * Returns the digest algorithms to calculate for an extracted file.
+	 *
+	 * @param artifactItem the artifact item
+	 * @return The algorithms
+	 */
+	protected List<String> getExtractAlgorithms(ArtifactItem artifactItem) {
+		List<String> algorithms = new ArrayList<String>();
+		algorithms.add(DigestCalculator.MD5);
+		algorithms.add(DigestCalculator.SHA1);
+		String algorithm = DigestCalculator.getAlgorithm(artifactItem.getExtractFileChecksum());
+		if (algorithm != null && !algorithms.contains(algorithm)) {
+			algorithms.add(algorithm);
+		}
+		return algorithms;
+	}
+
+	/**
+	 * Creates the exception for an <code>extractFile</code> that wasn't found
+	 * in the downloaded archive.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param artifact the artifact
+	 * @return The exception
+	 */
+	protected MojoExecutionException extractFileNotFound(ArtifactItem artifactItem, Artifact artifact) {
+		return new MojoExecutionException(
+			"Could not find target artifact file to extract from downloaded resource:" + NEWLINE +
+			"  groupId      : " + artifact.getGroupId() + NEWLINE +
+			"  artifactId   : " + artifact.getArtifactId() + NEWLINE +
+			"  version      : " + artifact.getVersion() + NEWLINE +
+			"  extractFile  : " + artifactItem.getExtractFile() + NEWLINE +
+			"  download URL : " + artifactItem.getDownloadUrl()
+		);
+	}
+
+	/**
+	 * Deletes a temporary directory, logging a warning if it fails.
+	 *
+	 * @param directory the directory to delete
+	 */
+	protected void deleteDirectory(File directory) {
+		try {
+			FileUtils.deleteDirectory(directory);
+		} catch (IOException e) {
+			getLog().warn("Could not delete temporary folder \"" + directory.getAbsolutePath() + "\": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Downloads the file at <code>downloadUrl</code> to a temporary file, or
+	 * to the download cache if it's enabled. A cached download is used
+	 * instead if the cache key includes the expected checksum, or if the
+	 * artifact is neither a snapshot nor forced. HTTP downloads to the cache
+	 * are resumed if an earlier transfer was interrupted.
+	 *
+	 * @param artifactItem the artifact item the download is for
+	 * @param artifact the artifact
+	 * @param downloadUrl the URL to download
+	 * @param conditional the validators of the staged files to send with a
+	 *            HTTP request, or <code>null</code>
+	 * @param downloads the downloads of this execution
+	 * @return The downloaded file or <code>null</code> if the server reported
+	 *         that it hasn't changed since the staged files were downloaded
+	 * @throws MojoExecutionException the mojo execution exception
+	 * @throws MojoFailureException the mojo failure exception
+	 */
+	protected DigestedFile fetchDownload(
+		ArtifactItem artifactItem,
+		Artifact artifact,
+		URL downloadUrl,
+		HttpValidators conditional,
+		DownloadRegistry downloads
+	) throws MojoExecutionException, MojoFailureException {
+		long start = System.nanoTime();
+		File cacheFile = null;
+		if (downloadCache != null) {
+			String checksum = artifactItem.hasChecksum() ? artifactItem.getChecksum() : null;
+			cacheFile = downloadCache.getFile(downloadUrl, checksum, getExtension(downloadUrl));
+			boolean mayUseCache = checksum != null || !(artifact.isSnapshot() || force || artifactItem.getForce());
+			if (mayUseCache && downloadCache.lookup(cacheFile)) {
+				getLog().info(String.format(
+					"Using cached download of %s for artifact %s",
+					artifactItem.getDownloadUrl(),
+					artifactItem.toString()
+				));
+				getLog().debug("Cached download: " + cacheFile.getAbsolutePath());
+				metrics.add(artifactItem, PhaseMetrics.DOWNLOAD, start, 0, Boolean.TRUE);
+				return new DigestedFile(cacheFile);
+			}
+		}
+
+		// create a temporary download file
+		File tempDownloadFile;
+		FileLock lock = null;
+		try {
+			if (cacheFile != null) {
+				if (HttpTransfer.supports(downloadUrl)) {
+					lock = downloadCache.lock(cacheFile);
+				}
+				if (lock != null) {
+					tempDownloadFile = downloadCache.getPartFile(cacheFile);
+				} else {
+					tempDownloadFile = downloadCache.createPartFile(artifactItem.getLocalFile());
+				}
+			} else {
+				tempDownloadFile = File.createTempFile(artifactItem.getLocalFile(), "." + getExtension(downloadUrl));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not create temporary file", e);
+		}
+
+		boolean success = false;
+		try {
+			DigestedFile download;
+			if (HttpTransfer.supports(downloadUrl)) {
+				download = transferHttpDownload(artifactItem, downloadUrl, tempDownloadFile, conditional, lock != null, downloads);
+				if (download == null) {
+					if (lock == null && tempDownloadFile.exists() && !tempDownloadFile.delete()) {
+						getLog().warn("Could not delete temporary file: " + tempDownloadFile.getAbsolutePath());
+					}
+					metrics.add(artifactItem, PhaseMetrics.DOWNLOAD, start, 0, Boolean.TRUE);
+					success = true;
+					return null;
+				}
+			} else {
+				download = transferDownload(artifactItem, downloadUrl, tempDownloadFile);
+			}
+			metrics.add(artifactItem, PhaseMetrics.DOWNLOAD, start, tempDownloadFile.length(), Boolean.FALSE);
+
+			if (cacheFile == null) {
+				success = true;
+				return download;
+			}
+
+			// Only put files that match the checksum in the cache key in the cache
+			verifyArtifactItemChecksum(artifactItem, download);
+			try {
+				downloadCache.store(tempDownloadFile, cacheFile);
+			} catch (IOException e) {
+				throw new MojoExecutionException(
+					"Could not store \"" + tempDownloadFile.getAbsolutePath() + "\" in the download cache: " + e.getMessage(), e
+				);
+			}
+			getLog().debug("Stored download in cache: " + cacheFile.getAbsolutePath());
+			success = true;
+			return download.forCopy(cacheFile);
+		} finally {
+			/*
+			 * A partial download is left for the next build to resume,
+			 * unless the whole file was downloaded.
+			 */
+			boolean incomplete = lock != null && HttpValidators.getFile(tempDownloadFile).exists();
+			if (!success && !incomplete && tempDownloadFile.exists() && !tempDownloadFile.delete()) {
+				getLog().warn("Could not delete temporary file: " + tempDownloadFile.getAbsolutePath());
+			}
+			if (lock != null) {
+				try {
+					downloadCache.release(lock);
+				} catch (IOException e) {
+					getLog().warn("Could not release download cache lock: " + e.getMessage());
+				}
+			}
+		}
+	}
 
+	/**
+	 * Transfers the file at the HTTP or HTTPS <code>downloadUrl</code> to
+	 * <code>tempDownloadFile</code>, calculating the digests while the data
+	 * is received. The validators of the response are registered in
+	 * <code>downloads</code>.
+	 *
+	 * @param artifactItem the artifact item the download is for
+	 * @param downloadUrl the URL to download
+	 * @param tempDownloadFile the file to download to
+	 * @param conditional the validators of the staged files to send with
+	 *            the request, or <code>null</code>
+	 * @param resumable whether a partial download in
+	 *            <code>tempDownloadFile</code> should be resumed, and kept if
+	 *            the transfer fails
+	 * @param downloads the downloads of this execution
+	 * @return The downloaded file or <code>null</code> if the server reported
+	 *         that it hasn't changed
+	 * @throws MojoExecutionException the mojo execution exception
+	 */
+	protected DigestedFile transferHttpDownload(
+		ArtifactItem artifactItem,
+		URL downloadUrl,
+		File tempDownloadFile,
+		HttpValidators conditional,
+		boolean resumable,
+		DownloadRegistry downloads
+	) throws MojoExecutionException {
+		if (conditional != null) {
+			getLog().info(String.format(
+				"Checking if URL %s has changed for artifact %s",
+				artifactItem.getDownloadUrl(),
+				artifactItem.toString()
+			));
+			getLog().debug("Sending validators: " + conditional);
 		} else {
-			throw new MojoExecutionException("Download URL for " + artifactItem.toString() + "must be specified");
+			getLog().info(String.format(
+				"Downloading artifact %s from URL %s",
+				artifactItem.toString(),
+				artifactItem.getDownloadUrl()
+			));
+		}
+		getLog().debug("Downloading artifact to temporary file: " + tempDownloadFile.getAbsolutePath());
+
+		Transport downloadTransport = getTransport();
+		HttpTransfer transfer = new HttpTransfer(
+			downloadUrl,
+			artifactItem.getTimeout(),
+			downloadTransport.getProxyInfo(),
+			downloadTransport.getAuthenticationInfo()
+		);
+		DigestCalculator calculator = new DigestCalculator(getDownloadAlgorithms(artifactItem));
+		try {
+			if (!transfer.get(tempDownloadFile, conditional, resumable, calculator)) {
+				downloads.setValidators(downloadUrl, conditional);
+				return null;
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Failed to download artifact " + artifactItem.toString() + ": " + e.getMessage(), e
+			);
+		}
+		if (transfer.getResumedFrom() > 0) {
+			getLog().info(String.format(
+				"Resumed download of %s after %d bytes",
+				artifactItem.getDownloadUrl(),
+				transfer.getResumedFrom()
+			));
+		}
+		getLog().debug("Received validators: " + transfer.getValidators());
+		downloads.setValidators(downloadUrl, transfer.getValidators());
+		return new DigestedFile(tempDownloadFile, calculator.getDigests());
+	}
+
+	/**
+	 * Returns the digest algorithms to calculate while downloading.
+	 *
+	 * @param artifactItem the artifact item the download is for
+	 * @return The algorithms
+	 */
+	protected List<String> getDownloadAlgorithms(ArtifactItem artifactItem) {
+		List<String> algorithms = new ArrayList<String>();
+		algorithms.add(DigestCalculator.MD5);
+		algorithms.add(DigestCalculator.SHA1);
+		String algorithm = DigestCalculator.getAlgorithm(artifactItem.getChecksum());
+		if (algorithm != null && !algorithms.contains(algorithm)) {
+			algorithms.add(algorithm);
+		}
+		return algorithms;
+	}
+
+	/**
+	 * Transfers the file at <code>downloadUrl</code> to
+	 * <code>tempDownloadFile</code>. The MD5 and SHA-1 digests, and the digest
+	 * matching the configured checksum, are calculated while the data is
+	 * received. A transfer that fails on a reused connection is retried once
+	 * on a new one.
+	 *
+	 * @param artifactItem the artifact item the download is for
+	 * @param downloadUrl the URL to download
+	 * @param tempDownloadFile the file to download to
+	 * @return The downloaded file
+	 * @throws MojoExecutionException the mojo execution exception
+	 */
+	protected DigestedFile transferDownload(ArtifactItem artifactItem, URL downloadUrl, File tempDownloadFile) throws MojoExecutionException {
+		getLog().info(
+			String.format("Downloading artifact %s from URL %s", artifactItem.toString(),
+			artifactItem.getDownloadUrl()
+		));
+		getLog().debug("Downloading artifact to temporary file: " + tempDownloadFile.getAbsolutePath());
+
+		String endPointUrl = downloadUrl.getProtocol() + "://" + downloadUrl.getAuthority();
+		Repository repository = new Repository(DOWNLOAD_REPOSITORY_ID, endPointUrl);
+		Transport downloadTransport = getTransport();
+		boolean reuse = true;
+		while (true) {
+			Wagon wagon;
+			try {
+				wagon = downloadTransport.acquire(repository, reuse);
+			} catch (WagonConfigurationException | UnsupportedProtocolException e) {
+				throw new MojoExecutionException(String.format(
+					"Could not initialize protocol \"%s\": %s",
+					downloadUrl.getProtocol(),
+					e.getMessage()
+				), e);
+			} catch (ConnectionException | AuthenticationException e) {
+				throw new MojoExecutionException(
+					"Failed to download artifact " + artifactItem.toString() + ": " + e.getMessage(), e
+				);
+			}
+			boolean reused = downloadTransport.isReused(wagon);
+			wagon.setTimeout(artifactItem.getTimeout());
+
+			DigestTransferListener digestListener = new DigestTransferListener(new DigestCalculator(getDownloadAlgorithms(artifactItem)));
+			wagon.addTransferListener(digestListener);
+
+			boolean success = false;
+			try {
+				wagon.get(downloadUrl.getPath().substring(1), tempDownloadFile);
+				success = true;
+			} catch (TransferFailedException e) {
+				if (!reused) {
+					throw new MojoExecutionException(
+						"Failed to download artifact " + artifactItem.toString() + ": " + e.getMessage(), e
+					);
+				}
+				// The server may have closed the connection while the Wagon was idle
+				getLog().debug("Download from " + downloadUrl + " failed on a reused connection, retrying: " + e.getMessage());
+				reuse = false;
+				continue;
+			} catch (ResourceDoesNotExistException | AuthorizationException e) {
+				throw new MojoExecutionException(
+					"Failed to download artifact " + artifactItem.toString() + ": " + e.getMessage(), e
+				);
+			} finally {
+				wagon.removeTransferListener(digestListener);
+				if (success) {
+					downloadTransport.release(repository, wagon);
+				} else {
+					downloadTransport.discard(wagon);
+				}
+			}
+
+			// Fall back to reading the file if the Wagon didn't report all the data
+			if (digestListener.getLength() != tempDownloadFile.length()) {
+				getLog().debug("Digests couldn't be calculated during transfer of " + downloadUrl);
+				return new DigestedFile(tempDownloadFile);
+			}
+			return new DigestedFile(tempDownloadFile, digestListener.getDigests());
 		}
 	}
 
@@ -902,6 +1814,92 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 		return FileUtils.getExtension(path);
 	}
 
+	/**
+	 * Returns the transport for the downloads of this execution. The Maven
+	 * settings are read for the proxy configuration when it's first called.
+	 *
+	 * @return The transport
+	 */
+	protected synchronized Transport getTransport() {
+		if (transport == null) {
+			transport = new Transport(
+				wagonManager,
+				getProxyInfo(),
+				wagonManager.getAuthenticationInfo(DOWNLOAD_REPOSITORY_ID),
+				getLog().isDebugEnabled()
+			);
+		}
+		return transport;
+	}
+
+	/**
+	 * Disconnects the connections opened for the downloads of this
+	 * execution. Must be called when the execution ends, also when it fails.
+	 */
+	protected synchronized void closeTransport() {
+		if (transport != null) {
+			transport.close(getLog());
+			transport = null;
+		}
+	}
+
+	/**
+	 * Returns the Central Repository checksum lookup of this execution.
+	 *
+	 * @return The lookup
+	 */
+	protected synchronized CentralLookup getCentralLookup() {
+		if (centralLookup == null) {
+			File cacheDirectory = null;
+			if (centralLookupCacheDirectory != null && !centralLookupCacheDirectory.isEmpty()) {
+				cacheDirectory = new File(centralLookupCacheDirectory);
+			}
+			centralLookup = new CentralLookup(
+				centralLookupUrl,
+				cacheDirectory,
+				TimeUnit.HOURS.toMillis(centralLookupCacheTtl),
+				TimeUnit.HOURS.toMillis(centralLookupNegativeCacheTtl),
+				centralLookupOffline,
+				centralLookupTimeout,
+				getTransport().getProxyInfo()
+			);
+		}
+		return centralLookup;
+	}
+
+	/**
+	 * Starts the Central Repository checksum lookups that can be made before
+	 * anything is downloaded, for the artifact items that are to be verified
+	 * and have a configured SHA-1 checksum.
+	 */
+	protected void prefetchCentralLookups() {
+		List<String> sha1Checksums = new ArrayList<String>();
+		for (ArtifactItem artifactItem : artifactItems) {
+			if (!centralChecksumVerification && !artifactItem.getCentralChecksumVerification()) {
+				continue;
+			}
+			String checksum = artifactItem.hasExtractFile() ? artifactItem.getExtractFileChecksum() : artifactItem.getChecksum();
+			if (DigestCalculator.SHA1.equals(DigestCalculator.getAlgorithm(checksum))) {
+				sha1Checksums.add(checksum.trim());
+			}
+		}
+		if (!sha1Checksums.isEmpty()) {
+			getLog().debug("Prefetching " + sha1Checksums.size() + " Central Repository checksum lookups");
+			getCentralLookup().prefetch(sha1Checksums);
+		}
+	}
+
+	/**
+	 * Stops the Central Repository checksum lookups still running in the
+	 * background. Must be called when the execution ends.
+	 */
+	protected synchronized void closeCentralLookup() {
+		if (centralLookup != null) {
+			centralLookup.close();
+			centralLookup = null;
+		}
+	}
+
 	/**
 	 * Looks up ProxyInfo from Maven settings.
 	 *
@@ -938,7 +1936,8 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 * @throws MojoExecutionException the mojo execution exception
 	 * @throws MojoFailureException the mojo failure exception
 	 */
-	protected void verifyArtifact(ArtifactItem artifactItem, File stagedArtifactFile) throws MojoExecutionException, MojoFailureException {
+	protected void verifyArtifact(ArtifactItem artifactItem, DigestedFile stagedArtifactFile) throws MojoExecutionException, MojoFailureException {
+		long start = System.nanoTime();
 
 		if (artifactItem.hasExtractFile()) {
 			/*
@@ -973,6 +1972,8 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 		 * artifact already hosted in another Maven repository
 		 */
 		verifyArtifactItemChecksumByCentralLookup(artifactItem, stagedArtifactFile);
+
+		metrics.add(artifactItem, PhaseMetrics.VERIFY, start, stagedArtifactFile.getFile().length(), null);
 	}
 
 	/**
@@ -980,11 +1981,12 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 	 *
 	 * @param artifactItem the current <code>ArtifactItem</code>
 	 * @param artifact the <code>Artifact</code> representing the <code>ArtifactItem</code>
-	 * @param stagedArtifactFile the <code>File</code> representing the staged
+	 * @param stagedArtifactFile the <code>DigestedFile</code> representing the staged
 	 * location for the <code>ArtifactItem</code>
 	 * @throws MojoExecutionException MojoExecutionException
 	 */
-	protected void installArtifact(ArtifactItem artifactItem, Artifact artifact, File stagedArtifactFile) throws MojoExecutionException {
+	protected void installArtifact(ArtifactItem artifactItem, Artifact artifact, DigestedFile stagedArtifactFile) throws MojoExecutionException {
+		long start = System.nanoTime();
 
 		// Create Maven artifact POM file
 		File generatedPomFile = null;
@@ -1013,15 +2015,6 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 			}
 		}
 
-		// Install artifact to local repository
-		try {
-			installer.install(stagedArtifactFile, artifact, localRepository);
-		} catch (ArtifactInstallationException e) {
-			throw new MojoExecutionException(
-				"Could not install artifact " + artifact.toString() + " to local repository: " + e.getMessage(), e
-			);
-		}
-
 		// Install checksum files to local repository
 		boolean createChecksum;
 		if (artifactItem.getCreateChecksum() != null) {
@@ -1029,6 +2022,85 @@ public abstract class AbstractExternalDependencyMojo extends AbstractInstallMojo
 		} else {
 			createChecksum = this.createChecksum;
 		}
-		installChecksums(artifact, createChecksum);
+
+		String md5 = null;
+		String sha1 = null;
+		if (createChecksum) {
+			// The installed file is a copy of the staged file, so the staged digests apply
+			try {
+				md5 = stagedArtifactFile.getDigest(DigestCalculator.MD5);
+				sha1 = stagedArtifactFile.getDigest(DigestCalculator.SHA1);
+			} catch (IOException e) {
+				throw new MojoExecutionException(
+					"Failed to calculate checksums for " + stagedArtifactFile.getFile() + ": " + e.getMessage(), e
+				);
+			}
+		}
+
+		synchronized (installLock) {
+			// Install artifact to local repository
+			try {
+				installer.install(stagedArtifactFile.getFile(), artifact, localRepository);
+			} catch (ArtifactInstallationException e) {
+				throw new MojoExecutionException(
+					"Could not install artifact " + artifact.toString() + " to local repository: " + e.getMessage(), e
+				);
+			}
+
+			if (createChecksum) {
+				File installedFile = getLocalRepoFile(artifact);
+				installChecksum(installedFile, ".md5", md5);
+				installChecksum(installedFile, ".sha1", sha1);
+
+				// The attached POM is small, so it's simply read again
+				for (ArtifactMetadata metadata : artifact.getMetadataList()) {
+					installChecksums(getLocalRepoFile(metadata));
+				}
+			}
+		}
+
+		metrics.add(artifactItem, PhaseMetrics.INSTALL, start, stagedArtifactFile.getFile().length(), null);
+	}
+
+	/**
+	 * Calculates and writes the MD5 and SHA-1 checksum files of an installed
+	 * file, if it exists.
+	 *
+	 * @param installedFile the installed file
+	 * @throws MojoExecutionException if the checksums could not be calculated
+	 *             or written
+	 */
+	protected void installChecksums(File installedFile) throws MojoExecutionException {
+		if (!installedFile.isFile()) {
+			return;
+		}
+		Map<String, String> checksums;
+		try {
+			checksums = DigestCalculator.calculate(installedFile, Arrays.asList(DigestCalculator.MD5, DigestCalculator.SHA1));
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+				"Failed to calculate checksums for " + installedFile + ": " + e.getMessage(), e
+			);
+		}
+		installChecksum(installedFile, ".md5", checksums.get(DigestCalculator.MD5));
+		installChecksum(installedFile, ".sha1", checksums.get(DigestCalculator.SHA1));
+	}
+
+	/**
+	 * Writes a checksum file next to an installed file.
+	 *
+	 * @param installedFile the installed file
+	 * @param extension the checksum file extension
+	 * @param checksum the checksum to write
+	 * @throws MojoExecutionException if the checksum file could not be written
+	 */
+	protected void installChecksum(File installedFile, String extension, String checksum) throws MojoExecutionException {
+		File checksumFile = new File(installedFile.getAbsolutePath() + extension);
+		getLog().debug("Installing checksum to " + checksumFile);
+		try {
+			FileUtils.fileWrite(checksumFile.getAbsolutePath(), "UTF-8", checksum);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to install checksum to " + checksumFile + ": " + e.getMessage(), e);
+		}
 	}
 }
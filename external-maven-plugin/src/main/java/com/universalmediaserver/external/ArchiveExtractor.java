@@ -0,0 +1,452 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+/**
+ * Extracts selected entries from a zip, tar, tar.gz or tar.bz2 archive
+ * without unpacking the rest of it. Zip entries are looked up through the
+ * central directory, tar archives are read once from the start for all
+ * requested entries and only until every requested entry is found. The
+ * Unix permissions stored in the archive are applied to the extracted files
+ * where the file system supports them. Symbolic links in an extracted
+ * directory are recreated as long as they point inside of it, hard links are
+ * extracted as copies of the file they link to.
+ */
+public class ArchiveExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The permission bits of a Unix file mode, in the order of {@link PosixFilePermission} */
+	private static final int[] PERMISSION_BITS = {0400, 0200, 0100, 040, 020, 010, 04, 02, 01};
+
+	private static class Target {
+		private final String path;
+		private final File file;
+		private final File subtree;
+
+		public Target(String path, File file, File subtree) {
+			this.path = path;
+			this.file = file;
+			this.subtree = subtree;
+		}
+	}
+
+	private final File archive;
+	private final Collection<String> algorithms;
+	private final Map<String, Target> targets = new LinkedHashMap<String, Target>();
+
+	/**
+	 * Creates a new extractor.
+	 *
+	 * @param archive the archive to extract from
+	 * @param algorithms the digest algorithms to calculate for extracted files
+	 */
+	public ArchiveExtractor(File archive, Collection<String> algorithms) {
+		this.archive = archive;
+		this.algorithms = algorithms;
+	}
+
+	/**
+	 * Checks if the archive format is supported, judging from the file name.
+	 *
+	 * @param archive the archive
+	 * @return true if the format is supported.
+	 */
+	public static boolean supports(File archive) {
+		String name = archive.getName().toLowerCase(Locale.ROOT);
+		return
+			isZip(name) || name.endsWith(".tar") ||
+			name.endsWith(".tar.gz") || name.endsWith(".tgz") ||
+			name.endsWith(".tar.bz2") || name.endsWith(".tbz2");
+	}
+
+	/**
+	 * Checks if the archive is a zip file that allows random access to its
+	 * entries, judging from the file name.
+	 *
+	 * @param archive the archive
+	 * @return true if the archive is a zip file.
+	 */
+	public static boolean isRandomAccess(File archive) {
+		return isZip(archive.getName().toLowerCase(Locale.ROOT));
+	}
+
+	private static boolean isZip(String name) {
+		return name.endsWith(".zip") || name.endsWith(".jar");
+	}
+
+	/**
+	 * Requests extraction of an entry.
+	 *
+	 * @param path the path of the entry in the archive
+	 * @param file where to write the entry if it's a file
+	 * @param subtree where to write the content of the entry if it's a
+	 *            directory, or <code>null</code> to only accept a file
+	 */
+	public void add(String path, File file, File subtree) {
+		targets.put(normalize(path), new Target(path, file, subtree));
+	}
+
+	/**
+	 * Extracts all requested entries.
+	 *
+	 * @return The extracted files or directories mapped by the path given to
+	 *         {@link #add(String, File, File)}. Paths that weren't found are
+	 *         left out.
+	 * @throws IOException if the archive could not be read or an entry could
+	 *             not be written
+	 */
+	public Map<String, DigestedFile> extract() throws IOException {
+		if (isRandomAccess(archive)) {
+			return extractZip();
+		}
+		return extractTar();
+	}
+
+	private Map<String, DigestedFile> extractZip() throws IOException {
+		Map<String, DigestedFile> result = new HashMap<String, DigestedFile>();
+		try (ZipFile zipFile = new ZipFile(archive, "UTF-8")) {
+			for (Entry<String, Target> target : targets.entrySet()) {
+				ZipArchiveEntry entry = getEntry(zipFile, target.getKey());
+				if (entry != null && !entry.isDirectory()) {
+					if (entry.isUnixSymlink()) {
+						throw new IOException(linkMessage(entry.getName(), zipFile.getUnixSymlink(entry)));
+					}
+					try (InputStream is = zipFile.getInputStream(entry)) {
+						result.put(target.getValue().path, write(is, target.getValue().file, entry.getTime(), getMode(entry)));
+					}
+				} else if (target.getValue().subtree != null) {
+					String prefix = target.getKey() + "/";
+					Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+					while (entries.hasMoreElements()) {
+						entry = entries.nextElement();
+						String name = normalize(entry.getName());
+						if (name.startsWith(prefix)) {
+							File file = resolve(target.getValue().subtree, name.substring(prefix.length()));
+							if (entry.isDirectory()) {
+								mkdirs(file);
+							} else if (entry.isUnixSymlink()) {
+								createSymbolicLink(target.getValue().subtree, file, zipFile.getUnixSymlink(entry));
+							} else {
+								try (InputStream is = zipFile.getInputStream(entry)) {
+									write(is, file, entry.getTime(), getMode(entry));
+								}
+							}
+							result.put(target.getValue().path, new DigestedFile(target.getValue().subtree));
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Looks up a zip entry by its normalized path, falling back to comparing
+	 * the normalized names of all entries for archives that store them with
+	 * a leading <code>./</code> or <code>/</code> or with backslashes.
+	 */
+	private static ZipArchiveEntry getEntry(ZipFile zipFile, String path) {
+		ZipArchiveEntry entry = zipFile.getEntry(path);
+		if (entry != null) {
+			return entry;
+		}
+		Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+		while (entries.hasMoreElements()) {
+			entry = entries.nextElement();
+			if (!entry.isDirectory() && normalize(entry.getName()).equals(path)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private Map<String, DigestedFile> extractTar() throws IOException {
+		Map<String, DigestedFile> result = new HashMap<String, DigestedFile>();
+		boolean hasSubtrees = false;
+		for (Target target : targets.values()) {
+			hasSubtrees |= target.subtree != null;
+		}
+
+		try (TarArchiveInputStream tis = new TarArchiveInputStream(openTarStream())) {
+			TarArchiveEntry entry;
+			while ((entry = tis.getNextTarEntry()) != null) {
+				String name = normalize(entry.getName());
+				Date modified = entry.getModTime();
+				long time = modified != null ? modified.getTime() : -1;
+				Target target = targets.get(name);
+				if (target != null && (entry.isSymbolicLink() || entry.isLink())) {
+					throw new IOException(linkMessage(entry.getName(), entry.getLinkName()));
+				} else if (target != null && entry.isFile()) {
+					result.put(target.path, write(tis, target.file, time, entry.getMode()));
+
+					// Stop reading as soon as there's nothing more to look for
+					if (!hasSubtrees && result.size() == targets.size()) {
+						break;
+					}
+				} else if (hasSubtrees) {
+					for (Entry<String, Target> subtree : targets.entrySet()) {
+						String prefix = subtree.getKey() + "/";
+						if (subtree.getValue().subtree == null || !name.startsWith(prefix)) {
+							continue;
+						}
+						File file = resolve(subtree.getValue().subtree, name.substring(prefix.length()));
+						if (entry.isDirectory()) {
+							mkdirs(file);
+						} else if (entry.isSymbolicLink()) {
+							createSymbolicLink(subtree.getValue().subtree, file, entry.getLinkName());
+						} else if (entry.isLink()) {
+							copyHardLink(subtree.getValue().subtree, prefix, file, entry.getLinkName());
+						} else if (entry.isFile()) {
+							write(tis, file, time, entry.getMode());
+						} else {
+							continue;
+						}
+						result.put(subtree.getValue().path, new DigestedFile(subtree.getValue().subtree));
+						break;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private InputStream openTarStream() throws IOException {
+		String name = archive.getName().toLowerCase(Locale.ROOT);
+		InputStream is = new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE);
+		try {
+			if (name.endsWith(".gz") || name.endsWith(".tgz")) {
+				return new GzipCompressorInputStream(is, true);
+			} else if (name.endsWith(".bz2") || name.endsWith(".tbz2")) {
+				return new BZip2CompressorInputStream(is, true);
+			}
+			return is;
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the Unix mode of a zip entry, or 0 if the archive was created
+	 * on a system without Unix permissions.
+	 */
+	private static int getMode(ZipArchiveEntry entry) {
+		return entry.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX ? entry.getUnixMode() : 0;
+	}
+
+	private DigestedFile write(InputStream is, File file, long time, int mode) throws IOException {
+		File parent = file.getParentFile();
+		if (parent != null) {
+			mkdirs(parent);
+		}
+		// Replace a link extracted earlier rather than writing through it
+		if (Files.isSymbolicLink(file.toPath())) {
+			Files.delete(file.toPath());
+		}
+
+		DigestCalculator calculator = new DigestCalculator(algorithms);
+		try (OutputStream os = new FileOutputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				os.write(buffer, 0, len);
+				calculator.update(buffer, 0, len);
+			}
+		}
+		if (time >= 0) {
+			// Keeping the original modification time is a nicety, failing is of no consequence
+			file.setLastModified(time);
+		}
+		setPermissions(file, mode);
+		return new DigestedFile(file, calculator.getDigests());
+	}
+
+	/**
+	 * Applies the permission bits of a Unix file mode to a file. The owner
+	 * keeps read and write access, so that a later extraction can replace
+	 * the file. Where POSIX permissions aren't supported, only an executable
+	 * file is made executable.
+	 *
+	 * @param file the file
+	 * @param mode the Unix file mode, or 0 if unknown
+	 * @throws IOException if the permissions could not be changed
+	 */
+	private static void setPermissions(File file, int mode) throws IOException {
+		if ((mode & 0777) == 0) {
+			return;
+		}
+		try {
+			Set<PosixFilePermission> permissions = EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+			PosixFilePermission[] values = PosixFilePermission.values();
+			for (int i = 0; i < values.length; i++) {
+				if ((mode & PERMISSION_BITS[i]) != 0) {
+					permissions.add(values[i]);
+				}
+			}
+			Files.setPosixFilePermissions(file.toPath(), permissions);
+		} catch (UnsupportedOperationException e) {
+			if ((mode & 0111) != 0 && !file.setExecutable(true, (mode & 011) == 0)) {
+				throw new IOException("Could not make " + file.getAbsolutePath() + " executable");
+			}
+		}
+	}
+
+	/**
+	 * Creates a symbolic link in an extracted directory, refusing targets
+	 * that point outside of it. Only leading <code>..</code> segments are
+	 * accepted, so that links extracted before can't be combined to escape
+	 * the directory.
+	 *
+	 * @param directory the extracted directory
+	 * @param link the link to create
+	 * @param linkName the target of the link as stored in the archive
+	 * @throws IOException if the target is outside of the directory or the
+	 *             link could not be created
+	 */
+	private void createSymbolicLink(File directory, File link, String linkName) throws IOException {
+		File parent = link.getParentFile();
+		mkdirs(parent);
+		String targetName = linkName.replace('\\', '/');
+		Path root = directory.toPath().toRealPath();
+		Path target = parent.toPath().toRealPath();
+		boolean escapes = targetName.startsWith("/") || new File(targetName).isAbsolute();
+		boolean descending = false;
+		for (String segment : targetName.split("/")) {
+			if (escapes) {
+				break;
+			}
+			if (segment.equals("..")) {
+				target = target.getParent();
+				escapes = descending || target == null || !target.startsWith(root);
+			} else if (!segment.isEmpty() && !segment.equals(".")) {
+				descending = true;
+			}
+		}
+		if (escapes) {
+			throw new IOException(
+				"Symbolic link \"" + link + "\" in " + archive + " points outside the target folder: " + linkName
+			);
+		}
+
+		Files.deleteIfExists(link.toPath());
+		try {
+			Files.createSymbolicLink(link.toPath(), Paths.get(targetName));
+		} catch (UnsupportedOperationException e) {
+			throw new IOException("Could not create symbolic link " + link.getAbsolutePath() + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Extracts a hard link as a copy of the file it links to, which must have
+	 * been extracted to the same directory before.
+	 *
+	 * @param directory the extracted directory
+	 * @param prefix the path of the directory in the archive, ending with a
+	 *            slash
+	 * @param link the file to create
+	 * @param linkName the path in the archive of the file linked to
+	 * @throws IOException if the file linked to wasn't extracted or could not
+	 *             be copied
+	 */
+	private void copyHardLink(File directory, String prefix, File link, String linkName) throws IOException {
+		String name = normalize(linkName);
+		File source = name.startsWith(prefix) ? resolve(directory, name.substring(prefix.length())) : null;
+		if (source == null || !Files.isRegularFile(source.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+			throw new IOException(
+				"Hard link \"" + link + "\" in " + archive + " points to an entry outside the target folder: " + linkName
+			);
+		}
+		Files.copy(
+			source.toPath(),
+			link.toPath(),
+			StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.COPY_ATTRIBUTES,
+			LinkOption.NOFOLLOW_LINKS
+		);
+	}
+
+	private String linkMessage(String name, String linkName) {
+		return String.format(
+			"Archive entry \"%s\" in %s is a link to \"%s\", extract the entry it links to instead",
+			name,
+			archive,
+			linkName
+		);
+	}
+
+	private static void mkdirs(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create folder: " + directory.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Resolves an entry path relative to a directory, refusing paths that
+	 * would end up outside of it.
+	 */
+	private File resolve(File directory, String relativePath) throws IOException {
+		for (String segment : relativePath.split("/")) {
+			if (segment.equals("..")) {
+				throw new IOException("Archive entry \"" + relativePath + "\" in " + archive + " points outside the target folder");
+			}
+		}
+		return new File(directory, relativePath);
+	}
+
+	private static String normalize(String path) {
+		String result = path.replace('\\', '/');
+		while (result.startsWith("./")) {
+			result = result.substring(2);
+		}
+		while (result.startsWith("/")) {
+			result = result.substring(1);
+		}
+		while (result.endsWith("/")) {
+			result = result.substring(0, result.length() - 1);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,503 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * Creates a zip, tar or tar.gz archive of a directory using several threads
+ * for the compression. Zip entries are deflated concurrently, tar.gz
+ * archives are compressed in concurrent blocks with
+ * {@link ParallelGzipOutputStream}. Entries are always added in path order.
+ * Symbolic links are stored as links rather than followed.
+ * Deflated zip entries wait in memory until they're written to the archive,
+ * up to a fixed number of bytes for all entries together, and in temporary
+ * files beyond that.
+ * If the archive is reproducible, entry timestamps and owners are replaced
+ * with fixed values so that archives of the same files are byte-identical.
+ */
+public class ArchivePacker {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** The fixed tar modification time of reproducible archives, 1980-02-01 UTC */
+	private static final long REPRODUCIBLE_TAR_TIME = 318211200000L;
+
+	/** The most memory used for deflated zip entries waiting to be written */
+	private static final long MAX_BUFFERED = Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+	private final int level;
+	private final int threads;
+	private final boolean reproducible;
+
+	/** The memory left for deflated zip entries waiting to be written */
+	private final AtomicLong buffered;
+
+	private static class Entry {
+		private final File file;
+		private final String name;
+		private final String linkName;
+		private Future<DeflatedFile> deflated;
+
+		public Entry(File file, String name, String linkName) {
+			this.file = file;
+			this.name = name;
+			this.linkName = linkName;
+		}
+	}
+
+	private static class DeflatedFile {
+		private final DeflatedData data;
+		private final long crc;
+		private final long size;
+
+		public DeflatedFile(DeflatedData data, long crc, long size) {
+			this.data = data;
+			this.crc = crc;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Holds the deflated data of a zip entry in memory chunks, as long as
+	 * there is memory left in the shared budget, and moves it to a temporary
+	 * file when there isn't.
+	 */
+	private static class DeflatedData extends OutputStream {
+		private final AtomicLong budget;
+		private final List<byte[]> chunks = new ArrayList<byte[]>();
+		private int lastChunkLength;
+		private File spillFile;
+		private OutputStream spillStream;
+		private long length;
+
+		public DeflatedData(AtomicLong budget) {
+			this.budget = budget;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			length += len;
+			while (len > 0 && spillStream == null) {
+				if (chunks.isEmpty() || lastChunkLength == BUFFER_SIZE) {
+					if (!reserve()) {
+						spill();
+						break;
+					}
+					chunks.add(new byte[BUFFER_SIZE]);
+					lastChunkLength = 0;
+				}
+				int count = Math.min(len, BUFFER_SIZE - lastChunkLength);
+				System.arraycopy(b, off, chunks.get(chunks.size() - 1), lastChunkLength, count);
+				lastChunkLength += count;
+				off += count;
+				len -= count;
+			}
+			if (len > 0) {
+				spillStream.write(b, off, len);
+			}
+		}
+
+		private boolean reserve() {
+			long available;
+			do {
+				available = budget.get();
+				if (available < BUFFER_SIZE) {
+					return false;
+				}
+			} while (!budget.compareAndSet(available, available - BUFFER_SIZE));
+			return true;
+		}
+
+		private void spill() throws IOException {
+			spillFile = File.createTempFile("external-repack", ".deflated");
+			spillStream = new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE);
+			for (int i = 0; i < chunks.size(); i++) {
+				spillStream.write(chunks.get(i), 0, i < chunks.size() - 1 ? BUFFER_SIZE : lastChunkLength);
+			}
+			releaseChunks();
+		}
+
+		private void releaseChunks() {
+			budget.addAndGet((long) chunks.size() * BUFFER_SIZE);
+			chunks.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (spillStream != null) {
+				spillStream.close();
+			}
+		}
+
+		/**
+		 * @return The number of bytes written.
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return A stream of the data written, after closing.
+		 * @throws IOException if the temporary file could not be opened
+		 */
+		public InputStream openInputStream() throws IOException {
+			if (spillFile != null) {
+				return new BufferedInputStream(new FileInputStream(spillFile), BUFFER_SIZE);
+			}
+			List<InputStream> streams = new ArrayList<InputStream>();
+			for (int i = 0; i < chunks.size(); i++) {
+				streams.add(new ByteArrayInputStream(chunks.get(i), 0, i < chunks.size() - 1 ? BUFFER_SIZE : lastChunkLength));
+			}
+			return new SequenceInputStream(Collections.enumeration(streams));
+		}
+
+		/**
+		 * Frees the memory and deletes the temporary file.
+		 */
+		public void dispose() {
+			releaseChunks();
+			if (spillStream != null) {
+				try {
+					spillStream.close();
+				} catch (IOException e) {
+					// The file is deleted anyway
+				}
+			}
+			if (spillFile != null && !spillFile.delete()) {
+				spillFile.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new packer.
+	 *
+	 * @param level the compression level from 0 to 9
+	 * @param threads the number of compression threads
+	 * @param reproducible whether to use fixed timestamps and owners
+	 */
+	public ArchivePacker(int level, int threads, boolean reproducible) {
+		this(level, threads, reproducible, MAX_BUFFERED);
+	}
+
+	/**
+	 * Creates a new packer that keeps at most <code>maxBuffered</code> bytes
+	 * of deflated zip entries in memory.
+	 *
+	 * @param level the compression level from 0 to 9
+	 * @param threads the number of compression threads
+	 * @param reproducible whether to use fixed timestamps and owners
+	 * @param maxBuffered the memory for deflated entries in bytes
+	 */
+	ArchivePacker(int level, int threads, boolean reproducible, long maxBuffered) {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		this.level = level;
+		this.threads = Math.max(threads, 1);
+		this.reproducible = reproducible;
+		this.buffered = new AtomicLong(maxBuffered);
+	}
+
+	/**
+	 * Checks if the archive format is supported, judging from the file name.
+	 *
+	 * @param archive the archive
+	 * @return true if the format is supported.
+	 */
+	public static boolean supports(File archive) {
+		String name = archive.getName().toLowerCase(Locale.ROOT);
+		return name.endsWith(".zip") || name.endsWith(".tar") || isTarGZip(name);
+	}
+
+	private static boolean isTarGZip(String name) {
+		return name.endsWith(".tar.gz") || name.endsWith(".tgz");
+	}
+
+	/**
+	 * Creates an archive of the content of a directory.
+	 *
+	 * @param directory the directory to archive
+	 * @param archive the archive to create
+	 * @throws IOException if a file could not be read or the archive could
+	 *             not be written
+	 */
+	public void pack(File directory, File archive) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		collect(directory, "", entries);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			String name = archive.getName().toLowerCase(Locale.ROOT);
+			if (name.endsWith(".zip")) {
+				packZip(entries, archive, executor);
+			} else {
+				packTar(entries, archive, isTarGZip(name) ? executor : null);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void collect(File directory, String prefix, List<Entry> entries) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Could not list folder: " + directory.getAbsolutePath());
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			Path path = file.toPath();
+			if (Files.isSymbolicLink(path)) {
+				// Following links would add files twice, or forever for a link to a parent folder
+				String linkName = Files.readSymbolicLink(path).toString().replace('\\', '/');
+				entries.add(new Entry(file, prefix + file.getName(), linkName));
+			} else if (file.isDirectory()) {
+				String name = prefix + file.getName() + "/";
+				entries.add(new Entry(file, name, null));
+				collect(file, name, entries);
+			} else if (file.isFile()) {
+				entries.add(new Entry(file, prefix + file.getName(), null));
+			}
+		}
+	}
+
+	private void packTar(List<Entry> entries, File archive, ExecutorService executor) throws IOException {
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE);
+		if (executor != null) {
+			os = new ParallelGzipOutputStream(os, level, executor, threads, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE);
+		}
+		try (TarArchiveOutputStream tos = new TarArchiveOutputStream(os, "UTF-8")) {
+			tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+			tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (Entry entry : entries) {
+				TarArchiveEntry tarEntry;
+				if (entry.linkName != null) {
+					tarEntry = new TarArchiveEntry(entry.name, TarArchiveEntry.LF_SYMLINK);
+					tarEntry.setLinkName(entry.linkName);
+					tarEntry.setModTime(getLastModified(entry.file));
+				} else {
+					tarEntry = new TarArchiveEntry(entry.file, entry.name);
+				}
+				tarEntry.setMode(getMode(entry));
+				if (reproducible) {
+					tarEntry.setModTime(REPRODUCIBLE_TAR_TIME);
+					tarEntry.setIds(0, 0);
+					tarEntry.setUserName("");
+					tarEntry.setGroupName("");
+				}
+				tos.putArchiveEntry(tarEntry);
+				if (entry.linkName == null && !entry.file.isDirectory()) {
+					try (InputStream is = new FileInputStream(entry.file)) {
+						int len;
+						while ((len = is.read(buffer)) != -1) {
+							tos.write(buffer, 0, len);
+						}
+					}
+				}
+				tos.closeArchiveEntry();
+			}
+		}
+	}
+
+	private void packZip(List<Entry> entries, File archive, ExecutorService executor) throws IOException {
+		// The local time is stored in zip files, so the fixed time must be local for the same bytes everywhere
+		long reproducibleTime = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
+
+		// Keep the threads busy while the finished entries are written, the memory they use is limited by MAX_BUFFERED
+		int maxPending = threads * 2;
+		Deque<Entry> pending = new ArrayDeque<Entry>();
+		try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(archive)) {
+			for (final Entry entry : entries) {
+				if (entry.linkName == null && !entry.file.isDirectory()) {
+					entry.deflated = executor.submit(new Callable<DeflatedFile>() {
+
+						@Override
+						public DeflatedFile call() throws IOException {
+							return deflate(entry.file);
+						}
+					});
+				}
+				pending.add(entry);
+				while (pending.size() > maxPending) {
+					writeZipEntry(zos, pending.remove(), reproducibleTime);
+				}
+			}
+			while (!pending.isEmpty()) {
+				writeZipEntry(zos, pending.remove(), reproducibleTime);
+			}
+		} finally {
+			for (Entry entry : pending) {
+				discard(entry);
+			}
+		}
+	}
+
+	/**
+	 * Cancels the deflation of an entry that won't be written, or frees what
+	 * it has deflated.
+	 */
+	private static void discard(Entry entry) {
+		if (entry.deflated == null || entry.deflated.cancel(false)) {
+			return;
+		}
+		try {
+			entry.deflated.get().data.dispose();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | CancellationException e) {
+			// Nothing to free
+		}
+	}
+
+	private void writeZipEntry(ZipArchiveOutputStream zos, Entry entry, long reproducibleTime) throws IOException {
+		ZipArchiveEntry zipEntry = new ZipArchiveEntry(entry.name);
+		zipEntry.setTime(reproducible ? reproducibleTime : getLastModified(entry.file));
+		zipEntry.setUnixMode(getMode(entry));
+		if (entry.linkName != null) {
+			// The target of a link is stored as its content
+			byte[] target = entry.linkName.getBytes(StandardCharsets.UTF_8);
+			CRC32 crc = new CRC32();
+			crc.update(target);
+			zipEntry.setMethod(ZipArchiveEntry.STORED);
+			zipEntry.setCrc(crc.getValue());
+			zipEntry.setSize(target.length);
+			zipEntry.setCompressedSize(target.length);
+			zos.addRawArchiveEntry(zipEntry, new ByteArrayInputStream(target));
+			return;
+		}
+		if (entry.deflated == null) {
+			zos.putArchiveEntry(zipEntry);
+			zos.closeArchiveEntry();
+			return;
+		}
+
+		DeflatedFile deflated;
+		try {
+			deflated = entry.deflated.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing " + entry.file);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Could not compress " + entry.file + ": " + e.getCause().getMessage(), e.getCause());
+		}
+		zipEntry.setMethod(level == 0 ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED);
+		zipEntry.setCrc(deflated.crc);
+		zipEntry.setSize(deflated.size);
+		zipEntry.setCompressedSize(deflated.data.getLength());
+		try (InputStream is = deflated.data.openInputStream()) {
+			zos.addRawArchiveEntry(zipEntry, is);
+		} finally {
+			deflated.data.dispose();
+		}
+	}
+
+	/**
+	 * Reads a file and deflates it to raw deflate data, or only reads it if
+	 * the compression level is 0.
+	 */
+	private DeflatedFile deflate(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		long size = 0;
+		DeflatedData data = new DeflatedData(buffered);
+		Deflater deflater = level == 0 ? null : new Deflater(level, true);
+		boolean success = false;
+		try {
+			OutputStream os = deflater == null ? data : new DeflaterOutputStream(data, deflater, BUFFER_SIZE);
+			try (InputStream is = new FileInputStream(file)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int len;
+				while ((len = is.read(buffer)) != -1) {
+					crc.update(buffer, 0, len);
+					size += len;
+					os.write(buffer, 0, len);
+				}
+			}
+			os.close();
+			success = true;
+		} finally {
+			if (deflater != null) {
+				deflater.end();
+			}
+			if (!success) {
+				data.dispose();
+			}
+		}
+		return new DeflatedFile(data, crc.getValue(), size);
+	}
+
+	private static int getMode(Entry entry) {
+		if (entry.linkName != null) {
+			return 0120777;
+		} else if (entry.file.isDirectory()) {
+			return 040755;
+		}
+		return entry.file.canExecute() ? 0100755 : 0100644;
+	}
+
+	/**
+	 * Returns the modification time of a file, or of the link itself rather
+	 * than its target if it's a symbolic link.
+	 */
+	private static long getLastModified(File file) throws IOException {
+		return Files.getLastModifiedTime(file.toPath(), LinkOption.NOFOLLOW_LINKS).toMillis();
+	}
+}
@@ -152,7 +152,8 @@ public class ArtifactItem {
 	private boolean centralChecksumVerification = false;
 
 	/**
-	 * Checksum for Artifact.
+	 * Checksum for Artifact. MD5, SHA-1, SHA-256 and SHA-512 checksums are
+	 * supported and told apart by their length.
 	 *
 	 * @parameter
 	 */
@@ -167,6 +168,7 @@ public class ArtifactItem {
 
 	/**
 	 * File checksum from file that was extracted from downloaded ZIP file.
+	 * MD5, SHA-1, SHA-256 and SHA-512 checksums are supported.
 	 *
 	 * @parameter
 	 */
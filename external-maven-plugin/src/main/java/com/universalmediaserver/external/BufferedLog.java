@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A {@link Log} that holds back all messages until {@link #flush()} is
+ * called, at which point they are written to the delegate in one block.
+ * This keeps the output for an artifact item together when several items
+ * are processed concurrently.
+ */
+public class BufferedLog implements Log {
+
+	private enum Level { DEBUG, INFO, WARN, ERROR }
+
+	private static class Entry {
+		private final Level level;
+		private final CharSequence content;
+		private final Throwable error;
+
+		public Entry(Level level, CharSequence content, Throwable error) {
+			this.level = level;
+			this.content = content;
+			this.error = error;
+		}
+	}
+
+	private final Log delegate;
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Creates a new buffered log.
+	 *
+	 * @param delegate the <code>Log</code> to write to when flushed
+	 */
+	public BufferedLog(Log delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Writes all buffered messages to the delegate and empties the buffer.
+	 * Concurrent flushes are serialized so that blocks don't interleave.
+	 */
+	public void flush() {
+		List<Entry> flushEntries;
+		synchronized (entries) {
+			flushEntries = new ArrayList<Entry>(entries);
+			entries.clear();
+		}
+		synchronized (delegate) {
+			for (Entry entry : flushEntries) {
+				switch (entry.level) {
+					case DEBUG:
+						delegate.debug(entry.content, entry.error);
+						break;
+					case INFO:
+						delegate.info(entry.content, entry.error);
+						break;
+					case WARN:
+						delegate.warn(entry.content, entry.error);
+						break;
+					default:
+						delegate.error(entry.content, entry.error);
+				}
+			}
+		}
+	}
+
+	private void add(Level level, CharSequence content, Throwable error) {
+		synchronized (entries) {
+			entries.add(new Entry(level, content, error));
+		}
+	}
+
+	@Override
+	public boolean isDebugEnabled() {
+		return delegate.isDebugEnabled();
+	}
+
+	@Override
+	public void debug(CharSequence content) {
+		if (delegate.isDebugEnabled()) {
+			add(Level.DEBUG, content, null);
+		}
+	}
+
+	@Override
+	public void debug(CharSequence content, Throwable error) {
+		if (delegate.isDebugEnabled()) {
+			add(Level.DEBUG, content, error);
+		}
+	}
+
+	@Override
+	public void debug(Throwable error) {
+		if (delegate.isDebugEnabled()) {
+			add(Level.DEBUG, null, error);
+		}
+	}
+
+	@Override
+	public boolean isInfoEnabled() {
+		return delegate.isInfoEnabled();
+	}
+
+	@Override
+	public void info(CharSequence content) {
+		add(Level.INFO, content, null);
+	}
+
+	@Override
+	public void info(CharSequence content, Throwable error) {
+		add(Level.INFO, content, error);
+	}
+
+	@Override
+	public void info(Throwable error) {
+		add(Level.INFO, null, error);
+	}
+
+	@Override
+	public boolean isWarnEnabled() {
+		return delegate.isWarnEnabled();
+	}
+
+	@Override
+	public void warn(CharSequence content) {
+		add(Level.WARN, content, null);
+	}
+
+	@Override
+	public void warn(CharSequence content, Throwable error) {
+		add(Level.WARN, content, error);
+	}
+
+	@Override
+	public void warn(Throwable error) {
+		add(Level.WARN, null, error);
+	}
+
+	@Override
+	public boolean isErrorEnabled() {
+		return delegate.isErrorEnabled();
+	}
+
+	@Override
+	public void error(CharSequence content) {
+		add(Level.ERROR, content, null);
+	}
+
+	@Override
+	public void error(CharSequence content, Throwable error) {
+		add(Level.ERROR, content, error);
+	}
+
+	@Override
+	public void error(Throwable error) {
+		add(Level.ERROR, null, error);
+	}
+}
@@ -0,0 +1,387 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.maven.wagon.proxy.ProxyInfo;
+
+/**
+ * Looks up which artifacts in the Central Repository have a given SHA-1
+ * checksum, using the Solr search API. Responses are kept in a persistent
+ * cache directory for a configurable time, with a separate time for
+ * responses without any artifacts. Each endpoint has its own subdirectory
+ * in the cache directory, so that responses of one search service are never
+ * mistaken for those of another. In offline mode only the cache is used,
+ * regardless of the age of the cached responses.
+ * <p>
+ * Lookups of the same checksum are only made once per instance, and
+ * {@link #prefetch(Collection)} starts lookups in the background so that
+ * they're done by the time they're needed.
+ */
+public class CentralLookup {
+
+	private static final int MAX_PREFETCH_THREADS = 4;
+	private static final int ROWS = 20;
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+	/**
+	 * The artifacts found in a lookup.
+	 */
+	public static class Result {
+		private final int numFound;
+		private final List<Map<String, String>> artifacts;
+		private final boolean cached;
+
+		private Result(int numFound, List<Map<String, String>> artifacts, boolean cached) {
+			this.numFound = numFound;
+			this.artifacts = artifacts;
+			this.cached = cached;
+		}
+
+		/**
+		 * @return The number of artifacts found, which can be more than
+		 *         returned by {@link #getArtifacts()}.
+		 */
+		public int getNumFound() {
+			return numFound;
+		}
+
+		/**
+		 * @return The properties of each artifact found, like <code>g</code>,
+		 *         <code>a</code> and <code>v</code>, in response order.
+		 */
+		public List<Map<String, String>> getArtifacts() {
+			return artifacts;
+		}
+
+		/**
+		 * @return true if the result was read from the cache.
+		 */
+		public boolean isCached() {
+			return cached;
+		}
+	}
+
+	private final String endpoint;
+	private final File cacheDirectory;
+	private final long ttl;
+	private final long negativeTtl;
+	private final boolean offline;
+	private final int timeout;
+	private final ProxyInfo proxyInfo;
+
+	private final ConcurrentMap<String, FutureTask<Result>> lookups = new ConcurrentHashMap<String, FutureTask<Result>>();
+	private ExecutorService executor;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param endpoint the URL of the Solr select handler
+	 * @param cacheDirectory the cache directory or <code>null</code> to not
+	 *            cache responses. The responses are stored in a
+	 *            subdirectory for the endpoint.
+	 * @param ttl the time in milliseconds a response with artifacts is used
+	 *            from the cache
+	 * @param negativeTtl the time in milliseconds a response without
+	 *            artifacts is used from the cache
+	 * @param offline whether only the cache should be used
+	 * @param timeout the connect and read timeout in milliseconds
+	 * @param proxyInfo the proxy to use or <code>null</code>
+	 */
+	public CentralLookup(
+		String endpoint,
+		File cacheDirectory,
+		long ttl,
+		long negativeTtl,
+		boolean offline,
+		int timeout,
+		ProxyInfo proxyInfo
+	) {
+		this.endpoint = endpoint;
+		this.cacheDirectory = cacheDirectory != null ? new File(cacheDirectory, getEndpointKey(endpoint)) : null;
+		this.ttl = ttl;
+		this.negativeTtl = negativeTtl;
+		this.offline = offline;
+		this.timeout = timeout;
+		this.proxyInfo = proxyInfo;
+	}
+
+	/**
+	 * Starts looking up the given checksums in the background.
+	 *
+	 * @param sha1Checksums the SHA-1 checksums
+	 */
+	public void prefetch(Collection<String> sha1Checksums) {
+		List<FutureTask<Result>> tasks = new ArrayList<FutureTask<Result>>();
+		for (String sha1Checksum : sha1Checksums) {
+			final String key = sha1Checksum.trim().toLowerCase(Locale.ROOT);
+			FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+
+				@Override
+				public Result call() throws IOException, XMLStreamException {
+					return load(key);
+				}
+			});
+			if (lookups.putIfAbsent(key, task) == null) {
+				tasks.add(task);
+			}
+		}
+		if (tasks.isEmpty()) {
+			return;
+		}
+
+		synchronized (this) {
+			if (executor == null) {
+				executor = Executors.newFixedThreadPool(MAX_PREFETCH_THREADS, new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "central-lookup");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			for (FutureTask<Result> task : tasks) {
+				executor.execute(task);
+			}
+		}
+	}
+
+	/**
+	 * Looks up a checksum, waiting for a lookup that is already running.
+	 *
+	 * @param sha1Checksum the SHA-1 checksum
+	 * @return The result or <code>null</code> if the lookup isn't cached in
+	 *         offline mode
+	 * @throws IOException if the Central Repository could not be contacted
+	 * @throws XMLStreamException if the response could not be parsed
+	 */
+	public Result lookup(String sha1Checksum) throws IOException, XMLStreamException {
+		final String key = sha1Checksum.trim().toLowerCase(Locale.ROOT);
+		FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+
+			@Override
+			public Result call() throws IOException, XMLStreamException {
+				return load(key);
+			}
+		});
+		FutureTask<Result> existing = lookups.putIfAbsent(key, task);
+		if (existing == null) {
+			task.run();
+		} else {
+			task = existing;
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the lookup of " + key, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof XMLStreamException) {
+				throw (XMLStreamException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Lookup of " + key + " failed: " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Stops any lookups still running in the background.
+	 */
+	public synchronized void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns a short file name safe key for an endpoint URL.
+	 */
+	private static String getEndpointKey(String endpoint) {
+		DigestCalculator calculator = new DigestCalculator(Collections.singletonList(DigestCalculator.SHA1));
+		byte[] bytes = endpoint.getBytes(StandardCharsets.UTF_8);
+		calculator.update(bytes, 0, bytes.length);
+		return calculator.getDigests().get(DigestCalculator.SHA1).substring(0, 16);
+	}
+
+	private Result load(String sha1Checksum) throws IOException, XMLStreamException {
+		File cacheFile = cacheDirectory != null ? new File(cacheDirectory, sha1Checksum + ".xml") : null;
+		if (cacheFile != null && cacheFile.isFile()) {
+			Result cached;
+			try {
+				cached = parse(cacheFile, true);
+			} catch (XMLStreamException e) {
+				// A broken cache entry is just a cache miss
+				cached = null;
+			}
+			if (cached != null) {
+				long age = System.currentTimeMillis() - cacheFile.lastModified();
+				if (offline || age < (cached.getArtifacts().isEmpty() ? negativeTtl : ttl)) {
+					return cached;
+				}
+			}
+		}
+		if (offline) {
+			return null;
+		}
+
+		File responseFile;
+		if (cacheFile != null) {
+			if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+				throw new IOException("Could not create folder: " + cacheDirectory.getAbsolutePath());
+			}
+			responseFile = File.createTempFile(sha1Checksum, ".part", cacheDirectory);
+		} else {
+			responseFile = File.createTempFile(sha1Checksum, ".xml");
+		}
+		try {
+			HttpTransfer transfer = new HttpTransfer(getQueryUrl(sha1Checksum), timeout, proxyInfo, null);
+			transfer.get(responseFile, null, false, new DigestCalculator(Collections.<String>emptyList()));
+			Result result = parse(responseFile, false);
+			if (cacheFile != null) {
+				try {
+					Files.move(
+						responseFile.toPath(),
+						cacheFile.toPath(),
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING
+					);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(responseFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			return result;
+		} finally {
+			if (responseFile.exists()) {
+				Files.delete(responseFile.toPath());
+			}
+		}
+	}
+
+	private URL getQueryUrl(String sha1Checksum) throws IOException {
+		try {
+			return new URL(
+				endpoint + (endpoint.contains("?") ? "&" : "?") +
+				"q=" + URLEncoder.encode("1:\"" + sha1Checksum + "\"", "UTF-8") +
+				"&rows=" + ROWS + "&wt=xml"
+			);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 isn't supported", e);
+		}
+	}
+
+	/**
+	 * Parses a Solr XML response, keeping the named <code>str</code>
+	 * properties of every <code>doc</code>.
+	 */
+	private static Result parse(File file, boolean cached) throws IOException, XMLStreamException {
+		int numFound = -1;
+		List<Map<String, String>> artifacts = new ArrayList<Map<String, String>>();
+		try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+			XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+			try {
+				int depth = 0;
+				int docDepth = -1;
+				Map<String, String> artifact = null;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						String element = reader.getLocalName();
+						if (
+							element.equals("result") && numFound < 0 &&
+							"response".equalsIgnoreCase(reader.getAttributeValue(null, "name"))
+						) {
+							try {
+								numFound = Integer.parseInt(reader.getAttributeValue(null, "numFound"));
+							} catch (NumberFormatException e) {
+								numFound = 0;
+							}
+						} else if (element.equals("doc") && artifact == null) {
+							artifact = new LinkedHashMap<String, String>();
+							docDepth = depth;
+						} else if (
+							element.equals("str") && artifact != null && depth == docDepth + 1 &&
+							reader.getAttributeValue(null, "name") != null
+						) {
+							String name = reader.getAttributeValue(null, "name");
+							// Reads up to and including the end element
+							artifact.put(name, reader.getElementText());
+							depth--;
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						if (artifact != null && depth == docDepth) {
+							artifacts.add(artifact);
+							artifact = null;
+						}
+						depth--;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		// If the number found can't be interpreted, use the list length (although it might be truncated)
+		if (numFound <= 0) {
+			numFound = artifacts.size();
+		}
+		return new Result(numFound, artifacts, cached);
+	}
+
+	private static XMLInputFactory createXMLInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+}
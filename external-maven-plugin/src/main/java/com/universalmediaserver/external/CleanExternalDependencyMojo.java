@@ -29,6 +29,14 @@ import org.apache.maven.plugin.MojoFailureException;
  */
 public class CleanExternalDependencyMojo extends AbstractExternalDependencyMojo {
 
+	/**
+	 * Flag that indicates whether to also delete all downloads in the
+	 * persistent download cache.
+	 *
+	 * @parameter property="external.cleanDownloadCache" default-value="false"
+	 */
+	protected boolean cleanDownloadCache;
+
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		getLog().info("Starting to clean external dependency staged files");
 
@@ -47,8 +55,21 @@ public class CleanExternalDependencyMojo extends AbstractExternalDependencyMojo
 					);
 				}
 			}
+			if (!HttpValidators.delete(downloadFile)) {
+				getLog().warn("Could not delete \"" + HttpValidators.getFile(downloadFile).getAbsolutePath() + "\"");
+			}
 		}
 		getLog().info("Finished cleaning external dependency staged files");
+
+		if (cleanDownloadCache && downloadCacheDirectory != null && !downloadCacheDirectory.isEmpty()) {
+			DownloadCache cache = new DownloadCache(new File(downloadCacheDirectory));
+			getLog().info("Deleting all downloads in the download cache: " + cache.getDirectory().getAbsolutePath());
+			try {
+				getLog().info("Deleted " + cache.clear() + " cached downloads");
+			} catch (IOException e) {
+				throw new MojoExecutionException("Could not clean the download cache: " + e.getMessage(), e);
+			}
+		}
 	}
 
 }
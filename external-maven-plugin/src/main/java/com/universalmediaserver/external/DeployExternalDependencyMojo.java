@@ -15,13 +15,28 @@
 package com.universalmediaserver.external;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.deployer.ArtifactDeployer;
 import org.apache.maven.artifact.deployer.ArtifactDeploymentException;
+import org.apache.maven.artifact.manager.WagonConfigurationException;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.artifact.ProjectArtifactMetadata;
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.UnsupportedProtocolException;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.authentication.AuthenticationException;
+import org.apache.maven.wagon.authorization.AuthorizationException;
+import org.apache.maven.wagon.repository.Repository;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * Deploy external dependencies to distribution management defined repository.
@@ -37,90 +52,291 @@ public class DeployExternalDependencyMojo extends AbstractExternalDependencyMojo
 	 */
 	private ArtifactDeployer artifactDeployer;
 
+	/**
+	 * The transport used to read the checksums of already deployed artifacts
+	 */
+	private Transport deploymentTransport;
+
+	/**
+	 * Serializes deployments of artifacts with the same groupId and
+	 * artifactId, since they update the same repository metadata
+	 */
+	private final Map<String, Object> deployLocks = new HashMap<String, Object>();
+
+	private final AtomicInteger deployed = new AtomicInteger();
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		super.execute();
 
 		getLog().info("Starting to deploy external dependencies to distribution repository");
 
-		// Loop over and process all configured artifacts
+		// Make sure all artifacts are installed before anything is deployed
 		for (ArtifactItem artifactItem : artifactItems) {
-			getLog().info("Resolving artifact in locale repository for deployment: " + artifactItem.toString());
+			if (!artifactItem.getDeploy()) {
+				continue;
+			}
+			File installedArtifactFile = getLocalRepoFile(createArtifact(artifactItem));
+			if (!installedArtifactFile.isFile()) {
+				// Throw exception because we were unable to find the installed external dependency
+				throw new MojoExecutionException(
+					"Unable to find external dependency \"" + artifactItem.getArtifactId() +
+					"\"; file not found in local repository: " + installedArtifactFile.getAbsolutePath() + NEWLINE +
+					"Make sure \"resolve\" and \"install\" goals has been executed first"
+				);
+			}
+		}
 
-			// Create Maven artifact
-			Artifact artifact = createArtifact(artifactItem);
+		final ArtifactRepository repo = getDeploymentRepository();
+
+		if (repo.getProtocol().equalsIgnoreCase("scp")) {
+			File sshFolder = new File(System.getProperty("user.home"), ".ssh");
+
+			if (!sshFolder.isDirectory() && !sshFolder.mkdirs() && !sshFolder.isDirectory()) {
+				throw new MojoExecutionException("Could not create folder: " + sshFolder.getAbsolutePath());
+			}
+		}
 
-			// Determine if the artifact is already installed in the local Maven repository
-			File installedArtifactFile = getLocalRepoFile(artifact);
+		deploymentTransport = new Transport(
+			wagonManager,
+			getProxyInfo(),
+			wagonManager.getAuthenticationInfo(repo.getId()),
+			getLog().isDebugEnabled()
+		);
+		try {
+			processArtifactItems(new ArtifactItemHandler() {
 
-			// Only proceed with this artifact if it is installed in the local repository.
-			if (installedArtifactFile.exists()) {
-				if (!resolveArtifactItem(artifact)) {
-					throw new MojoExecutionException(
-						"Could not resolve artifact " + artifact.toString() + NEWLINE +
-						"Make sure \"resolve\" and \"install\" goals has been executed first"
-					);
+				@Override
+				public void handle(ArtifactItem artifactItem) throws MojoExecutionException, MojoFailureException {
+					if (artifactItem.getDeploy()) {
+						deployArtifactItem(artifactItem, repo);
+					} else {
+						getLog().debug("Configured to not deploy artifact: " + artifactItem.toString());
+					}
 				}
+			});
+		} finally {
+			deploymentTransport.close(getLog());
+			deploymentTransport = null;
+			reportMetrics("deploy");
+		}
 
-				// Deploy to distribution Maven repository
-				if (artifactItem.getDeploy()) {
+		getLog().info(String.format(
+			"Deployed %d, skipped %d already deployed and failed to deploy %d external dependencies",
+			deployed.get(),
+			skipped.get(),
+			failed.get()
+		));
+		if (failed.get() > 0) {
+			throw new MojoExecutionException("Deployment of " + failed.get() + " external dependencies failed");
+		}
 
-					ArtifactRepository repo = getDeploymentRepository();
+		getLog().info("Finished deploying external dependencies to distribution repository");
+	}
 
-					String protocol = repo.getProtocol();
+	/**
+	 * Deploys a single installed artifact item, unless an identical artifact
+	 * and POM are already deployed. A failed deployment is logged and
+	 * counted, so that the remaining artifact items are still deployed.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param repo the deployment repository
+	 * @throws MojoExecutionException MojoExecutionException
+	 */
+	private void deployArtifactItem(ArtifactItem artifactItem, ArtifactRepository repo) throws MojoExecutionException {
+		long start = System.nanoTime();
 
-					if (protocol.equalsIgnoreCase("scp")) {
-						File sshFolder = new File(System.getProperty("user.home"), ".ssh");
+		// Create Maven artifact
+		Artifact artifact = createArtifact(artifactItem);
 
-						if (!sshFolder.exists() && !sshFolder.mkdirs()) {
-							throw new MojoExecutionException("Could not create folder: " + sshFolder.getAbsolutePath());
-						}
-					}
+		// The artifact is installed in the local repository, there's no need to resolve it
+		File installedArtifactFile = getLocalRepoFile(artifact);
+		artifact.setFile(installedArtifactFile);
 
-					// Create Maven artifact POM file
-					File generatedPomFile = null;
-
-					// Don't generate a POM file for POM artifacts
-					if (!"pom".equals(artifactItem.getPackaging())) {
-						if (artifactItem.getPomFile() != null) {
-							/*
-							 * If a POM file was provided for the artifact
-							 * item, then use that POM file instead of
-							 * generating a new one
-							 */
-							ProjectArtifactMetadata pomMetadata = new ProjectArtifactMetadata(artifact, artifactItem.getPomFile());
-							artifact.addMetadata(pomMetadata);
-						} else {
-							// Dynamically create a new POM file for this artifact
-							generatedPomFile = generatePomFile(artifactItem);
-							ProjectArtifactMetadata pomMetadata = new ProjectArtifactMetadata(artifact, generatedPomFile);
-
-							if (artifactItem.getGeneratePom() == true) {
-								artifact.addMetadata(pomMetadata);
-							}
-						}
+		// Create Maven artifact POM file
+		File generatedPomFile = null;
+		ProjectArtifactMetadata pomMetadata = null;
 
+		try {
+			// Don't generate a POM file for POM artifacts
+			if (!"pom".equals(artifactItem.getPackaging())) {
+				if (artifactItem.getPomFile() != null) {
+					/*
+					 * If a POM file was provided for the artifact
+					 * item, then use that POM file instead of
+					 * generating a new one
+					 */
+					pomMetadata = new ProjectArtifactMetadata(artifact, artifactItem.getPomFile());
+				} else if (artifactItem.getGeneratePom()) {
+					// Use the POM installed with the artifact, or create a new one if there is none
+					File installedPomFile = getLocalRepoFile(new ProjectArtifactMetadata(artifact));
+					if (installedPomFile.isFile()) {
+						pomMetadata = new ProjectArtifactMetadata(artifact, installedPomFile);
+					} else {
+						generatedPomFile = generatePomFile(artifactItem);
+						pomMetadata = new ProjectArtifactMetadata(artifact, generatedPomFile);
 					}
+				}
+				if (pomMetadata != null) {
+					artifact.addMetadata(pomMetadata);
+				}
+			}
 
-					// Deploy now
-					getLog().info("Deploying artifact to distribution repository: " + artifactItem.toString());
-					try {
-						artifactDeployer.deploy(artifact.getFile(), artifact, repo, localRepository);
-					} catch (ArtifactDeploymentException e) {
-						throw new MojoExecutionException("Deployment of external dependency failed with: " + e.getMessage(), e);
-					}
+			if (isDeployed(artifactItem, artifact, pomMetadata, repo)) {
+				getLog().info("Artifact is already deployed to distribution repository: " + artifactItem.toString());
+				skipped.incrementAndGet();
+				metrics.add(artifactItem, PhaseMetrics.DEPLOY, start, 0, Boolean.TRUE);
+				return;
+			}
+
+			// Deploy now
+			getLog().info("Deploying artifact to distribution repository: " + artifactItem.toString());
+			synchronized (getDeployLock(artifact)) {
+				artifactDeployer.deploy(installedArtifactFile, artifact, repo, localRepository);
+			}
+			deployed.incrementAndGet();
+			metrics.add(artifactItem, PhaseMetrics.DEPLOY, start, installedArtifactFile.length(), Boolean.FALSE);
+		} catch (ArtifactDeploymentException | MojoExecutionException e) {
+			getLog().error("Deployment of external dependency " + artifactItem.toString() + " failed with: " + e.getMessage());
+			getLog().debug(e);
+			failed.incrementAndGet();
+		} finally {
+			if (generatedPomFile != null && !generatedPomFile.delete()) {
+				getLog().debug("Could not delete temporary POM file: " + generatedPomFile.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the deployment repository already has an identical
+	 * artifact and POM by comparing their SHA-1 checksum files with the
+	 * files that would be deployed. Snapshots and forced artifact items are
+	 * always deployed.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param artifact the installed artifact
+	 * @param pomMetadata the POM that would be deployed with the artifact,
+	 *            or <code>null</code> if none
+	 * @param repo the deployment repository
+	 * @return true if the artifact is already deployed
+	 */
+	private boolean isDeployed(
+		ArtifactItem artifactItem,
+		Artifact artifact,
+		ProjectArtifactMetadata pomMetadata,
+		ArtifactRepository repo
+	) {
+		if (force || artifactItem.getForce() || artifact.isSnapshot()) {
+			return false;
+		}
+		if (!isDeployed(artifact.getFile(), repo.pathOf(artifact), repo)) {
+			return false;
+		}
+		return pomMetadata == null || isDeployed(pomMetadata.getFile(), repo.pathOfRemoteRepositoryMetadata(pomMetadata), repo);
+	}
+
+	/**
+	 * Checks whether the SHA-1 checksum file at <code>path</code> in the
+	 * deployment repository matches a local file.
+	 *
+	 * @param file the local file
+	 * @param path the repository path of the deployed file
+	 * @param repo the deployment repository
+	 * @return true if the deployed file is identical
+	 */
+	private boolean isDeployed(File file, String path, ArtifactRepository repo) {
+		String remoteChecksum = getRemoteChecksum(repo, path + ".sha1");
+		if (remoteChecksum == null) {
+			return false;
+		}
+
+		String localChecksum;
+		try {
+			localChecksum = new DigestedFile(file).getDigest(DigestCalculator.SHA1);
+		} catch (IOException e) {
+			getLog().warn("Failed to calculate checksum for " + file + ": " + e.getMessage());
+			return false;
+		}
+		getLog().debug("Deployed SHA-1 checksum of " + path + ": " + remoteChecksum + ", local SHA-1 checksum: " + localChecksum);
+		return remoteChecksum.equalsIgnoreCase(localChecksum);
+	}
+
+	/**
+	 * Reads a checksum file from the deployment repository.
+	 *
+	 * @param repo the deployment repository
+	 * @param path the repository path of the checksum file
+	 * @return The checksum or <code>null</code> if it doesn't exist or
+	 *         couldn't be read
+	 */
+	private String getRemoteChecksum(ArtifactRepository repo, String path) {
+		Repository repository = new Repository(repo.getId(), repo.getUrl());
+		boolean reuse = true;
+		while (true) {
+			Wagon wagon;
+			try {
+				wagon = deploymentTransport.acquire(repository, reuse);
+			} catch (UnsupportedProtocolException | WagonConfigurationException | ConnectionException | AuthenticationException e) {
+				getLog().warn("Could not connect to " + repo.getUrl() + " to check for deployed artifacts: " + e.getMessage());
+				return null;
+			}
+			boolean reused = deploymentTransport.isReused(wagon);
+
+			File checksumFile = null;
+			boolean success = false;
+			try {
+				checksumFile = File.createTempFile("external-deploy", ".sha1");
+				wagon.get(path, checksumFile);
+				success = true;
+
+				// The checksum may be followed by a file name
+				String checksum = FileUtils.fileRead(checksumFile, "UTF-8").trim();
+				int end = checksum.indexOf(' ');
+				return (end < 0 ? checksum : checksum.substring(0, end)).toLowerCase(Locale.ROOT);
+			} catch (ResourceDoesNotExistException e) {
+				success = true;
+				getLog().debug("No deployed checksum at " + path);
+				return null;
+			} catch (TransferFailedException e) {
+				if (!reused) {
+					getLog().warn("Could not read deployed checksum " + path + ": " + e.getMessage());
+					return null;
+				}
+				// The server may have closed the connection while the Wagon was idle
+				getLog().debug("Reading " + path + " failed on a reused connection, retrying: " + e.getMessage());
+				reuse = false;
+			} catch (AuthorizationException | IOException e) {
+				getLog().warn("Could not read deployed checksum " + path + ": " + e.getMessage());
+				return null;
+			} finally {
+				if (success) {
+					deploymentTransport.release(repository, wagon);
 				} else {
-					getLog().debug("Configured to not deploy artifact: " + artifactItem.toString());
+					deploymentTransport.discard(wagon);
+				}
+				if (checksumFile != null && !checksumFile.delete()) {
+					checksumFile.deleteOnExit();
 				}
-			} else {
-				// Throw exception because we were unable to find the installed external dependency
-				throw new MojoExecutionException(
-					"Unable to find external dependency \"" + artifactItem.getArtifactId() +
-					"\"; file not found in local repository: " + installedArtifactFile.getAbsolutePath()
-				);
 			}
 		}
+	}
 
-		getLog().info("Finished deploying external dependencies to distribution repository");
+	/**
+	 * Returns the lock deployments of the artifact's groupId and artifactId
+	 * must hold.
+	 *
+	 * @param artifact the artifact
+	 * @return The lock
+	 */
+	private synchronized Object getDeployLock(Artifact artifact) {
+		String key = artifact.getGroupId() + ":" + artifact.getArtifactId();
+		Object lock = deployLocks.get(key);
+		if (lock == null) {
+			lock = new Object();
+			deployLocks.put(key, lock);
+		}
+		return lock;
 	}
 
 	/**
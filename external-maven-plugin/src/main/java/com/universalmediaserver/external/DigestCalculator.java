@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Calculates several message digests of the same data in a single pass.
+ */
+public class DigestCalculator {
+
+	public static final String MD5 = "MD5";
+	public static final String SHA1 = "SHA-1";
+	public static final String SHA256 = "SHA-256";
+	public static final String SHA512 = "SHA-512";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Map<String, MessageDigest> digests = new LinkedHashMap<String, MessageDigest>();
+	private long length;
+
+	/**
+	 * Creates a new calculator for the given algorithms.
+	 *
+	 * @param algorithms the digest algorithms to calculate
+	 */
+	public DigestCalculator(Collection<String> algorithms) {
+		for (String algorithm : algorithms) {
+			if (!digests.containsKey(algorithm)) {
+				try {
+					digests.put(algorithm, MessageDigest.getInstance(algorithm));
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalArgumentException("Digest algorithm " + algorithm + " isn't available", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the digest algorithm a hexadecimal checksum was made with,
+	 * judging from its length.
+	 *
+	 * @param checksum the checksum
+	 * @return The algorithm or <code>null</code> if it's not recognized
+	 */
+	public static String getAlgorithm(String checksum) {
+		if (checksum == null) {
+			return null;
+		}
+		switch (checksum.trim().length()) {
+			case 32:
+				return MD5;
+			case 40:
+				return SHA1;
+			case 64:
+				return SHA256;
+			case 128:
+				return SHA512;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Feeds data to all digests.
+	 *
+	 * @param buffer the data
+	 * @param offset the offset of the data in <code>buffer</code>
+	 * @param len the number of bytes to use
+	 */
+	public void update(byte[] buffer, int offset, int len) {
+		for (MessageDigest digest : digests.values()) {
+			digest.update(buffer, offset, len);
+		}
+		length += len;
+	}
+
+	/**
+	 * Resets all digests so that a new calculation can begin.
+	 */
+	public void reset() {
+		for (MessageDigest digest : digests.values()) {
+			digest.reset();
+		}
+		length = 0;
+	}
+
+	/**
+	 * @return The number of bytes fed since the last reset.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Completes the calculation and returns the results. The calculator is
+	 * reset afterwards.
+	 *
+	 * @return The lower case hexadecimal digests mapped by algorithm
+	 */
+	public Map<String, String> getDigests() {
+		Map<String, String> result = new HashMap<String, String>();
+		for (Entry<String, MessageDigest> entry : digests.entrySet()) {
+			result.put(entry.getKey(), toHex(entry.getValue().digest()));
+		}
+		length = 0;
+		return result;
+	}
+
+	/**
+	 * Calculates the given digests of a file.
+	 *
+	 * @param file the file
+	 * @param algorithms the digest algorithms to calculate
+	 * @return The lower case hexadecimal digests mapped by algorithm
+	 * @throws IOException if the file could not be read
+	 */
+	public static Map<String, String> calculate(File file, Collection<String> algorithms) throws IOException {
+		DigestCalculator calculator = new DigestCalculator(algorithms);
+		try (InputStream is = new FileInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				calculator.update(buffer, 0, len);
+			}
+		}
+		return calculator.getDigests();
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hexDigits = "0123456789abcdef".toCharArray();
+		char[] result = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			result[i * 2] = hexDigits[(bytes[i] >> 4) & 0xf];
+			result[i * 2 + 1] = hexDigits[bytes[i] & 0xf];
+		}
+		return new String(result);
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.util.Map;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+
+/**
+ * A Wagon transfer listener that calculates digests of the transferred
+ * data while it's being downloaded, so that the downloaded file doesn't
+ * have to be read again to verify it.
+ */
+public class DigestTransferListener extends AbstractTransferListener {
+
+	private final DigestCalculator calculator;
+
+	/**
+	 * Creates a new listener.
+	 *
+	 * @param calculator the calculator to feed the transferred data to
+	 */
+	public DigestTransferListener(DigestCalculator calculator) {
+		this.calculator = calculator;
+	}
+
+	@Override
+	public void transferStarted(TransferEvent transferEvent) {
+		// A restarted transfer starts from the beginning
+		calculator.reset();
+	}
+
+	@Override
+	public void transferProgress(TransferEvent transferEvent, byte[] buffer, int length) {
+		if (transferEvent.getRequestType() == TransferEvent.REQUEST_GET) {
+			calculator.update(buffer, 0, length);
+		}
+	}
+
+	/**
+	 * @return The number of bytes received since the transfer started.
+	 */
+	public long getLength() {
+		return calculator.getLength();
+	}
+
+	/**
+	 * @return The digests of the received data mapped by algorithm.
+	 */
+	public Map<String, String> getDigests() {
+		return calculator.getDigests();
+	}
+}
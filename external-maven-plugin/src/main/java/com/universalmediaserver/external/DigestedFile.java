@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file together with the digests of its content. Digests that were
+ * calculated while the file was written are used as is, missing digests are
+ * calculated from the file when first needed. MD5 and SHA-1 are always
+ * calculated along with any missing digest since they are needed for the
+ * installed checksum files.
+ */
+public class DigestedFile {
+
+	private final File file;
+	private final Map<String, String> digests;
+
+	/**
+	 * Creates a new instance without any known digests.
+	 *
+	 * @param file the file
+	 */
+	public DigestedFile(File file) {
+		this(file, new HashMap<String, String>());
+	}
+
+	/**
+	 * Creates a new instance with already calculated digests.
+	 *
+	 * @param file the file
+	 * @param digests the known digests mapped by algorithm
+	 */
+	public DigestedFile(File file, Map<String, String> digests) {
+		this.file = file;
+		this.digests = digests;
+	}
+
+	/**
+	 * @return The file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns an instance for a copy of this file, sharing the digests.
+	 *
+	 * @param copy the file with the same content as this
+	 * @return The new instance
+	 */
+	public DigestedFile forCopy(File copy) {
+		return new DigestedFile(copy, digests);
+	}
+
+	/**
+	 * Returns a digest of the file, calculating it if it isn't known.
+	 *
+	 * @param algorithm the digest algorithm
+	 * @return The lower case hexadecimal digest
+	 * @throws IOException if the file could not be read
+	 */
+	public String getDigest(String algorithm) throws IOException {
+		synchronized (digests) {
+			if (!digests.containsKey(algorithm)) {
+				Set<String> algorithms = new LinkedHashSet<String>(Arrays.asList(
+					DigestCalculator.MD5,
+					DigestCalculator.SHA1,
+					algorithm
+				));
+				algorithms.removeAll(digests.keySet());
+				digests.putAll(DigestCalculator.calculate(file, algorithms));
+			}
+			return digests.get(algorithm);
+		}
+	}
+}
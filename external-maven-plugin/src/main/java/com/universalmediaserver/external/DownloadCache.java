@@ -0,0 +1,379 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A persistent download cache shared by all executions using the same
+ * directory, across modules and builds. Entries are keyed by the download
+ * URL together with the checksum the downloaded file is expected to have,
+ * if any. New entries are written to a temporary file and then moved into
+ * place, so concurrent builds never see a partially written entry. A
+ * partial download that was interrupted is kept, so that a later build can
+ * resume it. Entries used recently, by this or another build, are never
+ * evicted, so that they aren't deleted between being looked up and being
+ * read.
+ */
+public class DownloadCache {
+
+	private static final String PART_SUFFIX = ".part";
+	private static final String LOCK_SUFFIX = ".lock";
+
+	/** The time in milliseconds after its last use an entry may be evicted */
+	private static final long EVICTION_GRACE_PERIOD = 60L * 60 * 1000;
+
+	private final File directory;
+
+	/**
+	 * Creates a new download cache.
+	 *
+	 * @param directory the cache directory
+	 */
+	public DownloadCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return The cache directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the cache file for a download. The file may or may not exist.
+	 *
+	 * @param downloadUrl the download URL
+	 * @param checksum the expected checksum of the downloaded file or
+	 *            <code>null</code>
+	 * @param extension the file extension to use for the cache file
+	 * @return The cache file
+	 */
+	public File getFile(URL downloadUrl, String checksum, String extension) {
+		String key = downloadUrl.toExternalForm();
+		if (checksum != null) {
+			key += "|" + checksum.toLowerCase(Locale.ROOT);
+		}
+		String name = sha1(key);
+		if (extension != null && !extension.isEmpty()) {
+			name += "." + extension;
+		}
+		return new File(directory, name);
+	}
+
+	/**
+	 * Checks if a cache file exists and marks it as recently used.
+	 *
+	 * @param cacheFile the cache file as returned by
+	 *            {@link #getFile(URL, String, String)}
+	 * @return true if the file is cached.
+	 */
+	public boolean lookup(File cacheFile) {
+		if (!cacheFile.isFile()) {
+			return false;
+		}
+
+		/*
+		 * The modification time is used as the last access time for
+		 * eviction. Failing to update it only affects the eviction order.
+		 */
+		cacheFile.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Returns the file a download for <code>cacheFile</code> is written to
+	 * before it's stored, when it should be possible to resume the download
+	 * if it's interrupted. Only use it while holding the lock returned by
+	 * {@link #lock(File)}.
+	 *
+	 * @param cacheFile the cache file as returned by
+	 *            {@link #getFile(URL, String, String)}
+	 * @return The partial download file
+	 */
+	public File getPartFile(File cacheFile) {
+		return new File(cacheFile.getPath() + PART_SUFFIX);
+	}
+
+	/**
+	 * Locks the partial download file of a cache file, so that builds
+	 * running at the same time don't write to it at once.
+	 *
+	 * @param cacheFile the cache file as returned by
+	 *            {@link #getFile(URL, String, String)}
+	 * @return The lock or <code>null</code> if another build holds it
+	 * @throws IOException if the lock file could not be created
+	 */
+	public FileLock lock(File cacheFile) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create folder: " + directory.getAbsolutePath());
+		}
+		FileChannel channel = FileChannel.open(
+			new File(cacheFile.getPath() + LOCK_SUFFIX).toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE
+		);
+		FileLock lock = null;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// Held by another execution in this JVM
+		} finally {
+			if (lock == null) {
+				channel.close();
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Releases a lock returned by {@link #lock(File)}.
+	 *
+	 * @param lock the lock
+	 * @throws IOException if the lock file could not be closed
+	 */
+	public void release(FileLock lock) throws IOException {
+		try {
+			lock.release();
+		} finally {
+			lock.channel().close();
+		}
+	}
+
+	/**
+	 * Creates a temporary file in the cache directory to download to before
+	 * calling {@link #store(File, File)}.
+	 *
+	 * @param prefix the temporary file name prefix
+	 * @return The temporary file
+	 * @throws IOException if the file could not be created
+	 */
+	public File createPartFile(String prefix) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create folder: " + directory.getAbsolutePath());
+		}
+		return File.createTempFile(prefix.length() < 3 ? prefix + "___" : prefix, PART_SUFFIX, directory);
+	}
+
+	/**
+	 * Moves a completed download into the cache.
+	 *
+	 * @param partFile the completed download created with
+	 *            {@link #createPartFile(String)}
+	 * @param cacheFile the cache file to store it as
+	 * @throws IOException if the file could not be moved
+	 */
+	public void store(File partFile, File cacheFile) throws IOException {
+		try {
+			Files.move(
+				partFile.toPath(),
+				cacheFile.toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING
+			);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @param file the file to check
+	 * @return true if <code>file</code> is located in the cache directory.
+	 */
+	public boolean contains(File file) {
+		return directory.getAbsoluteFile().equals(file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is within
+	 * the given limits. Entries used within the last hour, and entries a
+	 * download is being stored as, are kept even if the cache stays above
+	 * the size limit.
+	 *
+	 * @param maxSize the maximum total size in bytes, or 0 for no limit
+	 * @param maxAge the maximum time in milliseconds since an entry was last
+	 *            used, or 0 for no limit
+	 * @return The number of deleted entries
+	 */
+	public int evict(long maxSize, long maxAge) {
+		List<File> entries = listEntries();
+		Collections.sort(entries, new Comparator<File>() {
+
+			@Override
+			public int compare(File o1, File o2) {
+				long l1 = o1.lastModified();
+				long l2 = o2.lastModified();
+				return l1 < l2 ? -1 : l1 == l2 ? 0 : 1;
+			}
+		});
+
+		long totalSize = 0;
+		for (File entry : entries) {
+			totalSize += entry.length();
+		}
+
+		long now = System.currentTimeMillis();
+		int deleted = 0;
+
+		// Partial downloads are kept for resuming, but not forever. Lock files
+		// are empty and may be held by another build, so they are kept.
+		if (maxAge > 0) {
+			for (File file : listFiles()) {
+				if (
+					isAuxiliary(file) && now - file.lastModified() > Math.max(maxAge, EVICTION_GRACE_PERIOD) &&
+					!file.getName().endsWith(LOCK_SUFFIX) && file.delete()
+				) {
+					deleted++;
+				}
+			}
+		}
+
+		for (File entry : entries) {
+			boolean tooOld = maxAge > 0 && now - entry.lastModified() > maxAge;
+			boolean tooBig = maxSize > 0 && totalSize > maxSize;
+			if (!tooOld && !tooBig) {
+				break;
+			}
+			if (now - entry.lastModified() < EVICTION_GRACE_PERIOD) {
+				// The rest have been used even more recently
+				break;
+			}
+			long size = entry.length();
+			if (delete(entry)) {
+				totalSize -= size;
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Deletes an entry unless a download is being stored as it.
+	 *
+	 * @return true if the entry was deleted.
+	 */
+	private boolean delete(File entry) {
+		FileLock lock;
+		try {
+			lock = lock(entry);
+		} catch (IOException e) {
+			return false;
+		}
+		if (lock == null) {
+			return false;
+		}
+		try {
+			// Check again, it may have been used since the entries were listed
+			return System.currentTimeMillis() - entry.lastModified() >= EVICTION_GRACE_PERIOD && entry.delete();
+		} finally {
+			try {
+				release(lock);
+			} catch (IOException e) {
+				// The lock is gone with the channel
+			}
+		}
+	}
+
+	/**
+	 * Deletes all entries in the cache.
+	 *
+	 * @return The number of deleted entries
+	 * @throws IOException if an entry could not be deleted
+	 */
+	public int clear() throws IOException {
+		int deleted = 0;
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile()) {
+					Files.delete(file.toPath());
+					deleted++;
+				}
+			}
+		}
+		return deleted;
+	}
+
+	private List<File> listFiles() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		List<File> result = new ArrayList<File>(Arrays.asList(files));
+		for (int i = result.size() - 1; i >= 0; i--) {
+			if (!result.get(i).isFile()) {
+				result.remove(i);
+			}
+		}
+		return result;
+	}
+
+	private List<File> listEntries() {
+		List<File> entries = listFiles();
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			// Leave downloads in progress alone
+			if (isAuxiliary(entries.get(i))) {
+				entries.remove(i);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @return true if <code>file</code> is a partial download or belongs to
+	 *         one, rather than a cache entry.
+	 */
+	private static boolean isAuxiliary(File file) {
+		String name = file.getName();
+		return
+			name.endsWith(PART_SUFFIX) ||
+			name.endsWith(PART_SUFFIX + HttpValidators.SUFFIX) ||
+			name.endsWith(LOCK_SUFFIX);
+	}
+
+	private static String sha1(String value) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 isn't available", e);
+		}
+		byte[] hash = md.digest(value.getBytes(StandardCharsets.UTF_8));
+		StringBuilder sb = new StringBuilder(hash.length * 2);
+		for (byte b : hash) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+}
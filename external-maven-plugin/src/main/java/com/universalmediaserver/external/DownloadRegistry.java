@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Keeps track of the files downloaded during one execution. Artifact items
+ * that share a download URL get the same file, and if a download is in
+ * progress when another item asks for the same URL, that item waits for
+ * the running transfer instead of starting a new one. Extractions from
+ * shared archives are coordinated the same way.
+ */
+public class DownloadRegistry {
+
+	private final ConcurrentMap<URL, FutureTask<DigestedFile>> downloads = new ConcurrentHashMap<URL, FutureTask<DigestedFile>>();
+	private final ConcurrentMap<URL, FutureTask<Map<String, DigestedFile>>> extractions =
+		new ConcurrentHashMap<URL, FutureTask<Map<String, DigestedFile>>>();
+	private final List<File> temporaryDirectories = Collections.synchronizedList(new ArrayList<File>());
+	private final ConcurrentMap<URL, HttpValidators> validators = new ConcurrentHashMap<URL, HttpValidators>();
+
+	/**
+	 * Returns the downloaded file for <code>url</code>, running
+	 * <code>download</code> in the calling thread if no other thread has
+	 * started downloading it yet.
+	 *
+	 * @param url the URL to download
+	 * @param download the task that performs the download
+	 * @return The downloaded file or <code>null</code> if the server reported
+	 *         that the file hasn't changed
+	 * @throws MojoExecutionException if the download failed or was interrupted
+	 * @throws MojoFailureException if the download failed
+	 */
+	public DigestedFile get(URL url, Callable<DigestedFile> download) throws MojoExecutionException, MojoFailureException {
+		return getOrRun(downloads, url, download, "download of " + url);
+	}
+
+	/**
+	 * Registers the HTTP validators of a download.
+	 *
+	 * @param url the download URL
+	 * @param httpValidators the validators
+	 */
+	public void setValidators(URL url, HttpValidators httpValidators) {
+		if (httpValidators != null) {
+			validators.put(url, httpValidators);
+		}
+	}
+
+	/**
+	 * @param url the download URL
+	 * @return The HTTP validators of the download or <code>null</code>.
+	 */
+	public HttpValidators getValidators(URL url) {
+		return validators.get(url);
+	}
+
+	/**
+	 * Takes an entry extracted from the archive downloaded from
+	 * <code>url</code>. The first caller for an archive runs
+	 * <code>extraction</code>, which extracts the entries for all artifact
+	 * items using the archive in one pass. Each entry can only be taken once.
+	 *
+	 * @param url the URL the archive was downloaded from
+	 * @param path the path of the entry in the archive
+	 * @param extraction the task that extracts the entries
+	 * @return The extracted entry or <code>null</code> if it wasn't found or
+	 *         was already taken
+	 * @throws MojoExecutionException if the extraction failed or was interrupted
+	 * @throws MojoFailureException if the extraction failed
+	 */
+	public DigestedFile takeExtracted(URL url, String path, Callable<Map<String, DigestedFile>> extraction)
+		throws MojoExecutionException, MojoFailureException {
+		Map<String, DigestedFile> extracted = getOrRun(extractions, url, extraction, "extraction from " + url);
+		synchronized (extracted) {
+			return extracted.remove(path);
+		}
+	}
+
+	/**
+	 * Registers a temporary directory to be deleted with the downloads.
+	 *
+	 * @param directory the directory
+	 */
+	public void addTemporaryDirectory(File directory) {
+		temporaryDirectories.add(directory);
+	}
+
+	/**
+	 * @return The registered temporary directories.
+	 */
+	public List<File> getTemporaryDirectories() {
+		synchronized (temporaryDirectories) {
+			return new ArrayList<File>(temporaryDirectories);
+		}
+	}
+
+	private static <T> T getOrRun(ConcurrentMap<URL, FutureTask<T>> tasks, URL url, Callable<T> callable, String description)
+		throws MojoExecutionException, MojoFailureException {
+		FutureTask<T> task = new FutureTask<T>(callable);
+		FutureTask<T> existing = tasks.putIfAbsent(url, task);
+		if (existing == null) {
+			task.run();
+		} else {
+			task = existing;
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while waiting for " + description, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof MojoExecutionException) {
+				throw (MojoExecutionException) cause;
+			} else if (cause instanceof MojoFailureException) {
+				throw (MojoFailureException) cause;
+			}
+			throw new MojoExecutionException("Failed " + description + ": " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * @param url the URL to check
+	 * @return true if a download of <code>url</code> has been started.
+	 */
+	public boolean contains(URL url) {
+		return downloads.containsKey(url);
+	}
+
+	/**
+	 * @return The files of all successfully completed downloads.
+	 */
+	public List<File> getFiles() {
+		List<File> files = new ArrayList<File>();
+		for (FutureTask<DigestedFile> task : downloads.values()) {
+			if (task.isDone() && !task.isCancelled()) {
+				try {
+					DigestedFile download = task.get();
+					if (download != null) {
+						files.add(download.getFile());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					// Failed downloads have no file
+				}
+			}
+		}
+		return files;
+	}
+}
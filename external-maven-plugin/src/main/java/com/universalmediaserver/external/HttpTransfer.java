@@ -0,0 +1,389 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.proxy.ProxyInfo;
+import org.apache.maven.wagon.proxy.ProxyUtils;
+import org.codehaus.plexus.util.Base64;
+
+/**
+ * Downloads a file over HTTP or HTTPS. Unlike a Wagon transfer, this can
+ * make the request conditional on the validators of an earlier download,
+ * and can resume a partial download with a range request. The validators
+ * of a partial download are stored next to it, so that a transfer that was
+ * interrupted in one build can be resumed by the next. Connections are
+ * left open for the next transfer from the same host when a response has
+ * been read completely.
+ */
+public class HttpTransfer {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_REDIRECTS = 10;
+	private static final int MAX_RESUMES = 3;
+	private static final int SC_PERMANENT_REDIRECT = 308;
+	private static final int SC_RANGE_NOT_SATISFIABLE = 416;
+
+	private final URL url;
+	private final int timeout;
+	private final ProxyInfo proxyInfo;
+	private final AuthenticationInfo authenticationInfo;
+
+	private HttpValidators validators;
+	private long resumedFrom;
+	private long received;
+
+	/**
+	 * Creates a new transfer.
+	 *
+	 * @param url the HTTP or HTTPS URL to download
+	 * @param timeout the connect and read timeout in milliseconds
+	 * @param proxyInfo the proxy to use or <code>null</code>
+	 * @param authenticationInfo the credentials to use for the download
+	 *            host or <code>null</code>
+	 */
+	public HttpTransfer(URL url, int timeout, ProxyInfo proxyInfo, AuthenticationInfo authenticationInfo) {
+		this.url = url;
+		this.timeout = timeout;
+		this.proxyInfo = proxyInfo;
+		this.authenticationInfo = authenticationInfo;
+	}
+
+	/**
+	 * Checks if a URL can be downloaded with this class.
+	 *
+	 * @param url the URL
+	 * @return true if the URL is a HTTP or HTTPS URL.
+	 */
+	public static boolean supports(URL url) {
+		String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+		return protocol.equals("http") || protocol.equals("https");
+	}
+
+	/**
+	 * Downloads the file. If <code>conditional</code> is given and the
+	 * server reports that the file hasn't changed, nothing is downloaded.
+	 *
+	 * @param file the file to download to
+	 * @param conditional the validators of an earlier download of the same
+	 *            URL or <code>null</code>
+	 * @param resumable whether a partial download left in <code>file</code>
+	 *            by an earlier transfer should be resumed, and the download
+	 *            left resumable if it fails
+	 * @param calculator the calculator to feed the complete file to
+	 * @return false if the file hasn't changed, true if it was downloaded.
+	 * @throws IOException if the download failed
+	 */
+	public boolean get(File file, HttpValidators conditional, boolean resumable, DigestCalculator calculator) throws IOException {
+		HttpValidators partial = null;
+		if (resumable) {
+			partial = HttpValidators.load(file);
+			if (partial != null && !(partial.isUsable() && url.toExternalForm().equals(partial.getUrl()) && file.isFile())) {
+				partial = null;
+			}
+		} else {
+			HttpValidators.delete(file);
+		}
+
+		for (int attempt = 0;; attempt++) {
+			received = 0;
+			try {
+				return transfer(file, conditional, partial, resumable, calculator);
+			} catch (IOException e) {
+				// Resume right away if the server sent some data before the transfer broke off
+				if (attempt < MAX_RESUMES && received > 0 && validators != null && validators.isUsable()) {
+					partial = validators;
+					continue;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * @return The validators of the downloaded file, or the validators passed
+	 *         as <code>conditional</code> if the file hasn't changed.
+	 */
+	public HttpValidators getValidators() {
+		return validators;
+	}
+
+	/**
+	 * @return The number of bytes that were already downloaded when the
+	 *         transfer was resumed, or 0 if it wasn't.
+	 */
+	public long getResumedFrom() {
+		return resumedFrom;
+	}
+
+	private boolean transfer(
+		File file,
+		HttpValidators conditional,
+		HttpValidators partial,
+		boolean resumable,
+		DigestCalculator calculator
+	) throws IOException {
+		long offset = partial != null ? file.length() : 0;
+		HttpURLConnection connection = connect(conditional, partial, offset);
+		boolean reusable = false;
+		try {
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && conditional != null) {
+				reusable = discard(connection);
+				validators = conditional;
+				return false;
+			}
+			if (status == SC_RANGE_NOT_SATISFIABLE && offset > 0) {
+				// The partial download doesn't fit what the server has, start over
+				reusable = discard(connection);
+				return transfer(file, conditional, null, resumable, calculator);
+			}
+
+			boolean append;
+			long totalLength;
+			if (status == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+				String contentRange = connection.getHeaderField("Content-Range");
+				if (getRangeStart(contentRange) != offset) {
+					throw new IOException("Unexpected Content-Range \"" + contentRange + "\" from " + url);
+				}
+				append = true;
+				totalLength = getRangeTotal(contentRange);
+			} else if (status == HttpURLConnection.HTTP_OK) {
+				append = false;
+				totalLength = connection.getContentLengthLong();
+			} else {
+				throw new IOException("Server returned HTTP " + status + " " + connection.getResponseMessage() + " for " + url);
+			}
+
+			validators = new HttpValidators(
+				url.toExternalForm(),
+				connection.getHeaderField("ETag"),
+				connection.getHeaderField("Last-Modified"),
+				totalLength
+			);
+			if (resumable && validators.isUsable()) {
+				validators.store(file);
+			}
+
+			calculator.reset();
+			if (append) {
+				update(calculator, file);
+				resumedFrom = offset;
+			} else {
+				resumedFrom = 0;
+			}
+
+			long expected = connection.getContentLengthLong();
+			try (
+				InputStream is = connection.getInputStream();
+				OutputStream os = new FileOutputStream(file, append)
+			) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int len;
+				while ((len = is.read(buffer)) != -1) {
+					os.write(buffer, 0, len);
+					calculator.update(buffer, 0, len);
+					received += len;
+				}
+			}
+			if (expected >= 0 && received != expected) {
+				throw new IOException(
+					"Transfer of " + url + " ended after " + received + " of " + expected + " bytes"
+				);
+			}
+
+			if (resumable) {
+				HttpValidators.delete(file);
+			}
+			reusable = true;
+			return true;
+		} finally {
+			// A completely read response leaves the connection open for the next request to the host
+			if (!reusable) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Sends the request, following redirects.
+	 */
+	private HttpURLConnection connect(HttpValidators conditional, HttpValidators partial, long offset) throws IOException {
+		URL location = url;
+		for (int redirects = 0;; redirects++) {
+			Proxy proxy = getProxy(location);
+			HttpURLConnection connection = (HttpURLConnection) location.openConnection(proxy);
+			connection.setInstanceFollowRedirects(false);
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
+			connection.setRequestProperty("Accept-Encoding", "identity");
+
+			// Don't hand the credentials to whichever host the download is redirected to
+			if (
+				authenticationInfo != null && authenticationInfo.getUserName() != null &&
+				location.getHost().equalsIgnoreCase(url.getHost())
+			) {
+				connection.setRequestProperty(
+					"Authorization",
+					basic(authenticationInfo.getUserName(), authenticationInfo.getPassword())
+				);
+			}
+			if (proxyInfo != null && proxyInfo.getUserName() != null && proxy.type() == Proxy.Type.HTTP) {
+				connection.setRequestProperty(
+					"Proxy-Authorization",
+					basic(proxyInfo.getUserName(), proxyInfo.getPassword())
+				);
+			}
+
+			if (conditional != null) {
+				if (conditional.getETag() != null) {
+					connection.setRequestProperty("If-None-Match", conditional.getETag());
+				}
+				if (conditional.getLastModified() != null) {
+					connection.setRequestProperty("If-Modified-Since", conditional.getLastModified());
+				}
+			}
+			if (offset > 0) {
+				connection.setRequestProperty("Range", "bytes=" + offset + "-");
+
+				// Weak ETags can't be used for ranges
+				String eTag = partial.getETag();
+				if (eTag != null && !eTag.startsWith("W/")) {
+					connection.setRequestProperty("If-Range", eTag);
+				} else if (partial.getLastModified() != null) {
+					connection.setRequestProperty("If-Range", partial.getLastModified());
+				}
+			}
+
+			int status = connection.getResponseCode();
+			switch (status) {
+				case HttpURLConnection.HTTP_MOVED_PERM:
+				case HttpURLConnection.HTTP_MOVED_TEMP:
+				case HttpURLConnection.HTTP_SEE_OTHER:
+				case SC_PERMANENT_REDIRECT:
+				case 307:
+					String target = connection.getHeaderField("Location");
+					discard(connection);
+					if (target == null) {
+						throw new IOException("Redirect without a location from " + location);
+					}
+					if (redirects >= MAX_REDIRECTS) {
+						throw new IOException("Too many redirects for " + url);
+					}
+					location = new URL(location, target);
+					break;
+				default:
+					return connection;
+			}
+		}
+	}
+
+	private Proxy getProxy(URL location) {
+		if (proxyInfo == null || proxyInfo.getHost() == null || ProxyUtils.validateNonProxyHosts(proxyInfo, location.getHost())) {
+			return Proxy.NO_PROXY;
+		}
+		Proxy.Type type =
+			proxyInfo.getType() != null && proxyInfo.getType().toUpperCase(Locale.ROOT).startsWith("SOCKS") ?
+			Proxy.Type.SOCKS :
+			Proxy.Type.HTTP;
+		return new Proxy(type, new InetSocketAddress(proxyInfo.getHost(), proxyInfo.getPort()));
+	}
+
+	private static String basic(String userName, String password) {
+		String credentials = userName + ":" + (password != null ? password : "");
+		return "Basic " + new String(Base64.encodeBase64(credentials.getBytes(StandardCharsets.UTF_8)), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Reads what's left of a response so that the connection can be reused.
+	 *
+	 * @return true if the connection can be reused.
+	 */
+	private static boolean discard(HttpURLConnection connection) {
+		try {
+			InputStream is = connection.getErrorStream();
+			if (is == null) {
+				is = connection.getInputStream();
+			}
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				while (is.read(buffer) != -1) {
+					// Discard
+				}
+			} finally {
+				is.close();
+			}
+			return true;
+		} catch (IOException e) {
+			connection.disconnect();
+			return false;
+		}
+	}
+
+	private static void update(DigestCalculator calculator, File file) throws IOException {
+		try (InputStream is = new FileInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				calculator.update(buffer, 0, len);
+			}
+		}
+	}
+
+	/**
+	 * Parses the first byte position of a <code>bytes</code> Content-Range.
+	 */
+	private static long getRangeStart(String contentRange) {
+		if (contentRange == null || !contentRange.startsWith("bytes ")) {
+			return -1;
+		}
+		int dash = contentRange.indexOf('-');
+		if (dash < 0) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentRange.substring(6, dash).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Parses the complete length of a <code>bytes</code> Content-Range.
+	 */
+	private static long getRangeTotal(String contentRange) {
+		int slash = contentRange.indexOf('/');
+		if (slash < 0) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentRange.substring(slash + 1).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
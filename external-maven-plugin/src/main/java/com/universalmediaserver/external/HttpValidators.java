@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * The HTTP validators (ETag, Last-Modified and Content-Length) of a
+ * downloaded file. They are stored in a small properties file next to the
+ * file they describe, so that later builds can ask the server whether the
+ * file has changed, or resume a partial download of the same content.
+ */
+public class HttpValidators {
+
+	/** The suffix of the file the validators are stored in */
+	public static final String SUFFIX = ".validators";
+
+	private static final String URL = "url";
+	private static final String ETAG = "etag";
+	private static final String LAST_MODIFIED = "lastModified";
+	private static final String CONTENT_LENGTH = "contentLength";
+
+	private final String url;
+	private final String eTag;
+	private final String lastModified;
+	private final long contentLength;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param url the download URL
+	 * @param eTag the ETag or <code>null</code>
+	 * @param lastModified the Last-Modified value or <code>null</code>
+	 * @param contentLength the length of the complete file, or -1 if
+	 *            unknown
+	 */
+	public HttpValidators(String url, String eTag, String lastModified, long contentLength) {
+		this.url = url;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.contentLength = contentLength;
+	}
+
+	/**
+	 * @return The download URL.
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return The ETag or <code>null</code>.
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * @return The Last-Modified value or <code>null</code>.
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return The length of the complete file, or -1 if unknown.
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * @return true if there is an ETag or a Last-Modified value the server
+	 *         can compare with.
+	 */
+	public boolean isUsable() {
+		return eTag != null || lastModified != null;
+	}
+
+	/**
+	 * Returns the file the validators of <code>file</code> are stored in.
+	 *
+	 * @param file the described file
+	 * @return The validators file
+	 */
+	public static File getFile(File file) {
+		return new File(file.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Reads the stored validators of a file.
+	 *
+	 * @param file the described file
+	 * @return The validators or <code>null</code> if none are stored or they
+	 *         couldn't be read
+	 */
+	public static HttpValidators load(File file) {
+		File validatorsFile = getFile(file);
+		if (!validatorsFile.isFile()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream is = new FileInputStream(validatorsFile)) {
+			properties.load(is);
+		} catch (IOException e) {
+			return null;
+		}
+		long contentLength;
+		try {
+			contentLength = Long.parseLong(properties.getProperty(CONTENT_LENGTH, "-1"));
+		} catch (NumberFormatException e) {
+			contentLength = -1;
+		}
+		return new HttpValidators(
+			properties.getProperty(URL),
+			properties.getProperty(ETAG),
+			properties.getProperty(LAST_MODIFIED),
+			contentLength
+		);
+	}
+
+	/**
+	 * Stores the validators of a file.
+	 *
+	 * @param file the described file
+	 * @throws IOException if the validators file could not be written
+	 */
+	public void store(File file) throws IOException {
+		Properties properties = new Properties();
+		if (url != null) {
+			properties.setProperty(URL, url);
+		}
+		if (eTag != null) {
+			properties.setProperty(ETAG, eTag);
+		}
+		if (lastModified != null) {
+			properties.setProperty(LAST_MODIFIED, lastModified);
+		}
+		properties.setProperty(CONTENT_LENGTH, Long.toString(contentLength));
+		try (OutputStream os = new FileOutputStream(getFile(file))) {
+			properties.store(os, null);
+		}
+	}
+
+	/**
+	 * Deletes the stored validators of a file, if any.
+	 *
+	 * @param file the described file
+	 * @return true if there are no stored validators afterwards.
+	 */
+	public static boolean delete(File file) {
+		File validatorsFile = getFile(file);
+		return !validatorsFile.exists() || validatorsFile.delete();
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 31 + (url == null ? 0 : url.hashCode());
+		result = 31 * result + (eTag == null ? 0 : eTag.hashCode());
+		result = 31 * result + (lastModified == null ? 0 : lastModified.hashCode());
+		return 31 * result + (int) (contentLength ^ (contentLength >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof HttpValidators)) {
+			return false;
+		}
+		HttpValidators other = (HttpValidators) obj;
+		return
+			equals(url, other.url) &&
+			equals(eTag, other.eTag) &&
+			equals(lastModified, other.lastModified) &&
+			contentLength == other.contentLength;
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
+	@Override
+	public String toString() {
+		return "ETag: " + eTag + ", Last-Modified: " + lastModified + ", Content-Length: " + contentLength;
+	}
+}
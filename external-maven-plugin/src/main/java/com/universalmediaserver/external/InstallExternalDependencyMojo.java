@@ -15,9 +15,6 @@
 package com.universalmediaserver.external;
 
 import java.io.File;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -37,97 +34,130 @@ public class InstallExternalDependencyMojo extends AbstractExternalDependencyMoj
 
 		getLog().info("Installing external dependencies into local repository..");
 
-		Map<URL, File> cachedDownloads = new HashMap<URL, File>();
-
-		// Loop over and process all configured artifacts
-		for (final ArtifactItem artifactItem : artifactItems) {
-			getLog().debug("Attempting to install external artifact: " + artifactItem.toString());
-
-			// Create Maven artifact
-			Artifact artifact = createArtifact(artifactItem);
-
-			// Determine if the artifact is already installed in the local Maven repository
-			boolean artifactAlreadyInstalled = getLocalRepoFile(artifact).exists();
-
-			// Determine if the artifact already is in the staging directory
-			File artifactFile = getFullyQualifiedArtifactFilePath(artifactItem);
-
-			/*
-			 * Get the file if it doesn't exist in the staging
-			 * directory, it is a snapshot (can have changed), or the artifact
-			 * or the installation is forced.
-			 */
-			if (!artifactFile.exists() || artifact.isSnapshot() || force || artifactItem.getForce()) {
-				if (getLog().isDebugEnabled()) {
-					String reason;
-					if (!artifactFile.exists()) {
-						reason = "it's not in the staging directory";
-					} else if (artifact.isSnapshot()) {
-						reason = "it's a snapshot";
-					} else {
-						reason = "it is FORCED";
-					}
-					getLog().info(String.format(
-						"Downloading artifact %s as " + reason,
-						artifactItem.toString()
-					));
+		final DownloadRegistry downloads = new DownloadRegistry();
+
+		// Process all configured artifacts
+		try {
+			prefetchCentralLookups();
+			processArtifactItems(new ArtifactItemHandler() {
+
+				@Override
+				public void handle(ArtifactItem artifactItem) throws MojoExecutionException, MojoFailureException {
+					installArtifactItem(artifactItem, downloads);
 				}
+			});
+		} finally {
+			closeCentralLookup();
+			closeTransport();
+			// Failed items leave their downloads and extraction folders behind too
+			deleteTemporaryDownloads(downloads);
+			reportMetrics("install");
+		}
 
-				downloadArtifact(artifactItem, artifact, artifactFile, cachedDownloads);
+		evictDownloadCache();
 
-				verifyArtifact(artifactItem, artifactFile);
-			} else if (artifactFile.exists()) {
-				getLog().debug(String.format("Artifact %s is already in the staging directory, no download is needed", artifactItem.toString()));
-			}
+		getLog().info("Finished installing all external dependencies into local repository");
+	}
 
-			getLog().debug(String.format("Resolving artifact %s for installation", artifactItem.toString()));
-
-			/*
-			 * Install the artifact if it's not installed, is a snapshot,
-			 * or it or the installation is forced.
-			 */
-			if (artifactItem.getInstall() && (!artifactAlreadyInstalled || artifact.isSnapshot() || force || artifactItem.getForce())) {
-				if (artifactAlreadyInstalled && artifact.isSnapshot()) {
-					getLog().debug(String.format(
-						"Reinstalling artifact %s into local repository because it's a snapshot ",
-						artifactItem.toString()
-					));
-				} else if (artifactAlreadyInstalled) {
-					getLog().debug(String.format(
-						"Reinstalling artifact %s into local repository as it is FORCED",
-						artifactItem.toString()
-					));
+	/**
+	 * Downloads, verifies and installs a single artifact item.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param downloads the downloads of this execution
+	 * @throws MojoExecutionException MojoExecutionException
+	 * @throws MojoFailureException MojoFailureException
+	 */
+	private void installArtifactItem(ArtifactItem artifactItem, DownloadRegistry downloads) throws MojoExecutionException, MojoFailureException {
+		getLog().debug("Attempting to install external artifact: " + artifactItem.toString());
+
+		// Create Maven artifact
+		Artifact artifact = createArtifact(artifactItem);
+
+		// Determine if the artifact is already installed in the local Maven repository
+		boolean artifactAlreadyInstalled = getLocalRepoFile(artifact).exists();
+
+		// Determine if the artifact already is in the staging directory
+		File artifactFile = getFullyQualifiedArtifactFilePath(artifactItem);
+		DigestedFile stagedArtifactFile;
+		boolean unchanged = false;
+
+		/*
+		 * Get the file if it doesn't exist in the staging
+		 * directory, it is a snapshot (can have changed), or the artifact
+		 * or the installation is forced.
+		 */
+		if (isDownloadNeeded(artifactItem, artifact, artifactFile)) {
+			if (getLog().isDebugEnabled()) {
+				String reason;
+				if (!artifactFile.exists()) {
+					reason = "it's not in the staging directory";
+				} else if (artifact.isSnapshot()) {
+					reason = "it's a snapshot";
 				} else {
-					getLog().debug(String.format(
-						"Installing artifact %s into local repository \"%s\"", artifactItem.toString(), localRepository.getId()
-					));
+					reason = "it is FORCED";
 				}
+				getLog().info(String.format(
+					"Downloading artifact %s as " + reason,
+					artifactItem.toString()
+				));
+			}
+
+			stagedArtifactFile = downloadArtifact(artifactItem, artifact, artifactFile, downloads);
 
-				installArtifact(artifactItem, artifact, artifactFile);
+			if (stagedArtifactFile == null) {
+				// The server reported that the staged file is current
+				unchanged = true;
+				stagedArtifactFile = new DigestedFile(artifactFile);
 			} else {
-				if (!artifactItem.getInstall()) {
-					getLog().info("Configured not to install artifact: " + artifactItem.toString());
-				} else {
-					getLog().debug(String.format(
-						"Aritifact %s already exists in the local repository; no installation is needed",
-						artifactItem.toString()
-					));
-				}
+				verifyArtifact(artifactItem, stagedArtifactFile);
+				storeHttpValidators(artifactItem, artifactFile, downloads);
 			}
+		} else {
+			getLog().debug(String.format("Artifact %s is already in the staging directory, no download is needed", artifactItem.toString()));
+			stagedArtifactFile = new DigestedFile(artifactFile);
 		}
 
-		if (cachedDownloads.size() > 0) {
-			getLog().info("Deleting temporary download files");
+		getLog().debug(String.format("Resolving artifact %s for installation", artifactItem.toString()));
+
+		/*
+		 * Install the artifact if it's not installed, or is a snapshot or
+		 * forced and has changed since it was installed.
+		 */
+		if (
+			artifactItem.getInstall() &&
+			(!artifactAlreadyInstalled || !unchanged && (artifact.isSnapshot() || force || artifactItem.getForce()))
+		) {
+			if (artifactAlreadyInstalled && artifact.isSnapshot()) {
+				getLog().debug(String.format(
+					"Reinstalling artifact %s into local repository because it's a snapshot ",
+					artifactItem.toString()
+				));
+			} else if (artifactAlreadyInstalled) {
+				getLog().debug(String.format(
+					"Reinstalling artifact %s into local repository as it is FORCED",
+					artifactItem.toString()
+				));
+			} else {
+				getLog().debug(String.format(
+					"Installing artifact %s into local repository \"%s\"", artifactItem.toString(), localRepository.getId()
+				));
+			}
 
-			// We're done with the temporary files so lets delete them
-			for (File tempDownloadFile : cachedDownloads.values()) {
-				getLog().debug("Deleting file: " + tempDownloadFile.getAbsolutePath());
-				if (!tempDownloadFile.delete()) {
-					getLog().warn("Could not delete temporary file: " + tempDownloadFile.getAbsolutePath());
-				}
+			installArtifact(artifactItem, artifact, stagedArtifactFile);
+		} else {
+			if (!artifactItem.getInstall()) {
+				getLog().info("Configured not to install artifact: " + artifactItem.toString());
+			} else if (unchanged) {
+				getLog().debug(String.format(
+					"Artifact %s hasn't changed since it was installed; no installation is needed",
+					artifactItem.toString()
+				));
+			} else {
+				getLog().debug(String.format(
+					"Aritifact %s already exists in the local repository; no installation is needed",
+					artifactItem.toString()
+				));
 			}
 		}
-
-		getLog().info("Finished installing all external dependencies into local repository");
 	}
 }
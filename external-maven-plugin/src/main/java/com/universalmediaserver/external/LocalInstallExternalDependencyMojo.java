@@ -71,7 +71,7 @@ public class LocalInstallExternalDependencyMojo extends AbstractExternalDependen
 							));
 						}
 
-						installArtifact(artifactItem, artifact, stagedArtifactFile);
+						installArtifact(artifactItem, artifact, new DigestedFile(stagedArtifactFile));
 					} else {
 						getLog().info("Configured not to install artifact: " + artifactItem.toString());
 					}
@@ -91,6 +91,8 @@ public class LocalInstallExternalDependencyMojo extends AbstractExternalDependen
 			}
 		}
 
+		reportMetrics("localinstall");
+
 		getLog().info("Finished installing all external dependencies into local repository");
 	}
 }
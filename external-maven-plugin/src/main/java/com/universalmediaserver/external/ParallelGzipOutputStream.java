@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses blocks of the data concurrently, the
+ * way pigz does. Each block is deflated on its own, primed with the last
+ * 32 KiB of the previous block as dictionary, and ends on a byte boundary
+ * so that the compressed blocks can simply be concatenated. The result is a
+ * single regular gzip member that any gzip reader can decompress. The
+ * output only depends on the data, the block size and the compression
+ * level, not on the number of threads.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	/** The default size of the blocks that are compressed concurrently */
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private final OutputStream out;
+	private final int level;
+	private final ExecutorService executor;
+	private final int maxPending;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private final CRC32 crc = new CRC32();
+	private final byte[] single = new byte[1];
+
+	private byte[] block;
+	private int blockLength;
+	private byte[] dictionary;
+	private long size;
+	private boolean finished;
+
+	/**
+	 * Creates a new stream and writes the gzip header.
+	 *
+	 * @param out the stream to write the compressed data to
+	 * @param level the compression level from 0 to 9
+	 * @param executor the executor to compress the blocks with
+	 * @param threads the number of threads of <code>executor</code>
+	 * @param blockSize the size of the blocks to compress concurrently
+	 * @throws IOException if the header could not be written
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int level, ExecutorService executor, int threads, int blockSize) throws IOException {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		this.out = out;
+		this.level = level;
+		this.executor = executor;
+		// Keep the threads busy while the finished blocks are written, without buffering everything
+		this.maxPending = Math.max(threads, 1) * 2;
+		this.block = new byte[Math.max(blockSize, DICTIONARY_SIZE)];
+
+		// Magic number, deflate, no flags, no modification time, no extra flags, unknown OS
+		out.write(new byte[] {(byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("The stream is finished");
+		}
+		crc.update(b, off, len);
+		size += len;
+		while (len > 0) {
+			int count = Math.min(len, block.length - blockLength);
+			System.arraycopy(b, off, block, blockLength, count);
+			blockLength += count;
+			off += count;
+			len -= count;
+			if (blockLength == block.length) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	/**
+	 * Compresses the remaining data and writes the gzip trailer without
+	 * closing the underlying stream.
+	 *
+	 * @throws IOException if the data could not be compressed or written
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		submitBlock(true);
+		while (!pending.isEmpty()) {
+			writeBlock();
+		}
+		writeInt((int) crc.getValue());
+		writeInt((int) size);
+		out.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			for (Future<byte[]> future : pending) {
+				future.cancel(true);
+			}
+			pending.clear();
+			out.close();
+		}
+	}
+
+	private void submitBlock(final boolean last) throws IOException {
+		final byte[] input = block;
+		final int length = blockLength;
+		final byte[] previous = dictionary;
+		pending.add(executor.submit(new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() {
+				return deflate(input, length, previous, last);
+			}
+		}));
+
+		if (!last) {
+			dictionary = Arrays.copyOfRange(input, length - DICTIONARY_SIZE, length);
+			block = new byte[input.length];
+			blockLength = 0;
+		}
+		while (pending.size() > maxPending) {
+			writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		Future<byte[]> future = pending.remove();
+		try {
+			out.write(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing");
+		} catch (ExecutionException e) {
+			throw new IOException("Compression failed: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private void writeInt(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >>> 8) & 0xff);
+		out.write((value >>> 16) & 0xff);
+		out.write((value >>> 24) & 0xff);
+	}
+
+	/**
+	 * Deflates a block to raw deflate data. All blocks but the last end with
+	 * a sync flush, the last one finishes the deflate stream.
+	 */
+	private byte[] deflate(byte[] input, int length, byte[] previous, boolean last) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (previous != null) {
+				deflater.setDictionary(previous);
+			}
+			deflater.setInput(input, 0, length);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+			byte[] buffer = new byte[16 * 1024];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int count = deflater.deflate(buffer);
+					compressed.write(buffer, 0, count);
+				}
+			} else {
+				int count;
+				do {
+					count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					compressed.write(buffer, 0, count);
+				} while (count == buffer.length);
+			}
+			return compressed.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects the wall time, size and cache hits of the phases each artifact
+ * item goes through during an execution, and reports them as a summary in
+ * the log and as JSON and CSV files. It's safe to use from several threads.
+ */
+public class PhaseMetrics {
+
+	/** Downloading, or finding the download in a cache */
+	public static final String DOWNLOAD = "download";
+
+	/** Verifying the staged file's checksums */
+	public static final String VERIFY = "verify";
+
+	/** Extracting the staged file from a downloaded archive */
+	public static final String EXTRACT = "extract";
+
+	/** Installing to the local repository, checksums included */
+	public static final String INSTALL = "install";
+
+	/** Deploying to the distribution repository */
+	public static final String DEPLOY = "deploy";
+
+	private static final String[] PHASES = {DOWNLOAD, VERIFY, EXTRACT, INSTALL, DEPLOY};
+
+	/**
+	 * A measurement of one phase for one artifact item.
+	 */
+	public static class Measurement {
+		private final String artifactItem;
+		private final String phase;
+		private final long nanos;
+		private final long bytes;
+		private final Boolean cacheHit;
+
+		/**
+		 * Creates a new measurement.
+		 *
+		 * @param artifactItem the artifact item
+		 * @param phase the phase
+		 * @param nanos the wall time in nanoseconds
+		 * @param bytes the number of bytes processed
+		 * @param cacheHit whether the work was avoided, or <code>null</code>
+		 *            if the phase can't be avoided
+		 */
+		public Measurement(String artifactItem, String phase, long nanos, long bytes, Boolean cacheHit) {
+			this.artifactItem = artifactItem;
+			this.phase = phase;
+			this.nanos = nanos;
+			this.bytes = bytes;
+			this.cacheHit = cacheHit;
+		}
+
+		/**
+		 * @return The artifact item.
+		 */
+		public String getArtifactItem() {
+			return artifactItem;
+		}
+
+		/**
+		 * @return The phase.
+		 */
+		public String getPhase() {
+			return phase;
+		}
+
+		/**
+		 * @return The wall time in nanoseconds.
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return The number of bytes processed.
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return Whether the work was avoided, or <code>null</code> if the
+		 *         phase can't be avoided.
+		 */
+		public Boolean getCacheHit() {
+			return cacheHit;
+		}
+
+		/**
+		 * @return The throughput in bytes per second, or 0 if unknown.
+		 */
+		public long getBytesPerSecond() {
+			return nanos > 0 ? (long) (bytes * 1000000000.0 / nanos) : 0;
+		}
+	}
+
+	private final List<Measurement> measurements = new ArrayList<Measurement>();
+
+	/**
+	 * Adds a measurement of a phase that started at <code>startNanos</code>
+	 * and ends now.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param phase the phase
+	 * @param startNanos the {@link System#nanoTime()} when the phase started
+	 * @param bytes the number of bytes processed
+	 * @param cacheHit whether the work was avoided, or <code>null</code> if
+	 *            the phase can't be avoided
+	 */
+	public void add(ArtifactItem artifactItem, String phase, long startNanos, long bytes, Boolean cacheHit) {
+		Measurement measurement = new Measurement(
+			artifactItem.toString(),
+			phase,
+			System.nanoTime() - startNanos,
+			bytes,
+			cacheHit
+		);
+		synchronized (measurements) {
+			measurements.add(measurement);
+		}
+	}
+
+	/**
+	 * @return A copy of the measurements in the order they were added.
+	 */
+	public List<Measurement> getMeasurements() {
+		synchronized (measurements) {
+			return new ArrayList<Measurement>(measurements);
+		}
+	}
+
+	/**
+	 * @return true if nothing was measured.
+	 */
+	public boolean isEmpty() {
+		synchronized (measurements) {
+			return measurements.isEmpty();
+		}
+	}
+
+	/**
+	 * Logs a table with the totals of each phase. The phase times are the
+	 * sums of the item times, so they exceed the wall time of the execution
+	 * if items are processed concurrently.
+	 *
+	 * @param log the log
+	 */
+	public void logSummary(Log log) {
+		Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+		for (String phase : PHASES) {
+			totals.put(phase, new long[4]);
+		}
+		for (Measurement measurement : getMeasurements()) {
+			long[] total = totals.get(measurement.getPhase());
+			if (total == null) {
+				total = new long[4];
+				totals.put(measurement.getPhase(), total);
+			}
+			total[0]++;
+			total[1] += measurement.getNanos();
+			total[2] += measurement.getBytes();
+			if (Boolean.TRUE.equals(measurement.getCacheHit())) {
+				total[3]++;
+			}
+		}
+
+		log.info(String.format("%-10s %6s %10s %12s %10s %10s", "Phase", "Items", "Time (s)", "Size (MB)", "MB/s", "Cache hits"));
+		for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+			long[] total = entry.getValue();
+			if (total[0] == 0) {
+				continue;
+			}
+			double seconds = total[1] / 1000000000.0;
+			double megabytes = total[2] / (1024.0 * 1024.0);
+			log.info(String.format(
+				Locale.ROOT,
+				"%-10s %6d %10.3f %12.2f %10.2f %10d",
+				entry.getKey(),
+				total[0],
+				seconds,
+				megabytes,
+				seconds > 0 ? megabytes / seconds : 0,
+				total[3]
+			));
+		}
+	}
+
+	/**
+	 * Writes the measurements to <code>name.json</code> and
+	 * <code>name.csv</code>.
+	 *
+	 * @param directory the directory to write the files to
+	 * @param name the base name of the files
+	 * @throws IOException if the files could not be written
+	 */
+	public void write(File directory, String name) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create folder: " + directory.getAbsolutePath());
+		}
+		List<Measurement> copy = getMeasurements();
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, name + ".json")), StandardCharsets.UTF_8)) {
+			writer.write("[\n");
+			for (int i = 0; i < copy.size(); i++) {
+				Measurement measurement = copy.get(i);
+				writer.write(String.format(
+					Locale.ROOT,
+					"  {\"artifactItem\": \"%s\", \"phase\": \"%s\", \"timeMillis\": %.3f, \"bytes\": %d, \"bytesPerSecond\": %d, \"cacheHit\": %s}%s\n",
+					escapeJson(measurement.getArtifactItem()),
+					escapeJson(measurement.getPhase()),
+					measurement.getNanos() / 1000000.0,
+					measurement.getBytes(),
+					measurement.getBytesPerSecond(),
+					measurement.getCacheHit(),
+					i < copy.size() - 1 ? "," : ""
+				));
+			}
+			writer.write("]\n");
+		}
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(directory, name + ".csv")), StandardCharsets.UTF_8)) {
+			writer.write("artifactItem,phase,timeMillis,bytes,bytesPerSecond,cacheHit\n");
+			for (Measurement measurement : copy) {
+				writer.write(String.format(
+					Locale.ROOT,
+					"%s,%s,%.3f,%d,%d,%s\n",
+					escapeCsv(measurement.getArtifactItem()),
+					escapeCsv(measurement.getPhase()),
+					measurement.getNanos() / 1000000.0,
+					measurement.getBytes(),
+					measurement.getBytesPerSecond(),
+					measurement.getCacheHit() == null ? "" : measurement.getCacheHit().toString()
+				));
+			}
+		}
+	}
+
+	private static String escapeJson(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String escapeCsv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
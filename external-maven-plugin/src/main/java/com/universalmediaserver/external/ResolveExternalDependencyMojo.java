@@ -15,9 +15,6 @@
 package com.universalmediaserver.external;
 
 import java.io.File;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -40,58 +37,79 @@ public class ResolveExternalDependencyMojo extends AbstractExternalDependencyMoj
 		// Get a set of all project artifacts
 		// Set<Artifact> projectArtifacts = project.createArtifacts(artifactFactory, null, null );
 
-		Map<URL, File> cachedDownloads = new HashMap<URL, File>();
+		final DownloadRegistry downloads = new DownloadRegistry();
 
-		// Loop over and process all configured artifacts
-		for (final ArtifactItem artifactItem : artifactItems) {
-			getLog().info("Attempting to resolve external artifact: " + artifactItem.toString());
+		// Process all configured artifacts
+		try {
+			prefetchCentralLookups();
+			processArtifactItems(new ArtifactItemHandler() {
 
-			// Create Maven artifact
-			Artifact artifact = createArtifact(artifactItem);
-
-			/*
-			 * Now that the file has been successfully downloaded and the
-			 * checksum verification has passed (if required), lets copy
-			 * the temporary file to the staging location
-			 */
-			final File artifactFile = getFullyQualifiedArtifactFilePath(artifactItem);
-
-			/*
-			 * Get the file if it doesn't exist in the staging
-			 * directory, it is a snapshot (can have changed), or the artifact
-			 * or the installation is forced.
-			 */
-			if (!artifactFile.exists() || artifact.isSnapshot() || force || artifactItem.getForce()) {
-
-				if (artifactItem.getForce()) {
-					getLog().debug(String.format("Artifact %s is flagged as a FORCED download", artifactItem.toString()));
+				@Override
+				public void handle(ArtifactItem artifactItem) throws MojoExecutionException, MojoFailureException {
+					stageArtifactItem(artifactItem, downloads);
 				}
+			});
+		} finally {
+			closeCentralLookup();
+			closeTransport();
+			// Failed items leave their downloads and extraction folders behind too
+			deleteTemporaryDownloads(downloads);
+			reportMetrics("resolve");
+		}
 
-				downloadArtifact(artifactItem, artifact, artifactFile, cachedDownloads);
+		evictDownloadCache();
 
-				getLog().info(String.format("Artifact %s downloaded and staged", artifactItem.toString()));
+		getLog().info("Finished resolving all external dependencies");
+	}
 
-				verifyArtifact(artifactItem, artifactFile);
-			} else {
-				getLog().info(String.format(
-					"External artifact %s already exists in staging directory; no download needed.",
-					artifactItem.toString()
-				));
+	/**
+	 * Downloads and verifies a single artifact item.
+	 *
+	 * @param artifactItem the artifact item
+	 * @param downloads the downloads of this execution
+	 * @throws MojoExecutionException MojoExecutionException
+	 * @throws MojoFailureException MojoFailureException
+	 */
+	private void stageArtifactItem(ArtifactItem artifactItem, DownloadRegistry downloads) throws MojoExecutionException, MojoFailureException {
+		getLog().info("Attempting to resolve external artifact: " + artifactItem.toString());
+
+		// Create Maven artifact
+		Artifact artifact = createArtifact(artifactItem);
+
+		/*
+		 * Now that the file has been successfully downloaded and the
+		 * checksum verification has passed (if required), lets copy
+		 * the temporary file to the staging location
+		 */
+		final File artifactFile = getFullyQualifiedArtifactFilePath(artifactItem);
+
+		/*
+		 * Get the file if it doesn't exist in the staging
+		 * directory, it is a snapshot (can have changed), or the artifact
+		 * or the installation is forced.
+		 */
+		if (isDownloadNeeded(artifactItem, artifact, artifactFile)) {
+
+			if (artifactItem.getForce()) {
+				getLog().debug(String.format("Artifact %s is flagged as a FORCED download", artifactItem.toString()));
 			}
-		}
 
-		if (cachedDownloads.size() > 0) {
-			getLog().info("Deleting temporary download files");
+			DigestedFile stagedArtifactFile = downloadArtifact(artifactItem, artifact, artifactFile, downloads);
 
-			// We're done with the temporary files so lets delete them
-			for (File tempDownloadFile : cachedDownloads.values()) {
-				getLog().debug("Deleting file: " + tempDownloadFile.getAbsolutePath());
-				if (!tempDownloadFile.delete()) {
-					getLog().warn("Could not delete temporary file: " + tempDownloadFile.getAbsolutePath());
-				}
+			// The server reported that the staged file is current
+			if (stagedArtifactFile == null) {
+				return;
 			}
-		}
 
-		getLog().info("Finished resolving all external dependencies");
+			getLog().info(String.format("Artifact %s downloaded and staged", artifactItem.toString()));
+
+			verifyArtifact(artifactItem, stagedArtifactFile);
+			storeHttpValidators(artifactItem, artifactFile, downloads);
+		} else {
+			getLog().info(String.format(
+				"External artifact %s already exists in staging directory; no download needed.",
+				artifactItem.toString()
+			));
+		}
 	}
 }
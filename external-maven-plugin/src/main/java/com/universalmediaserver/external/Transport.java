@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.artifact.manager.WagonConfigurationException;
+import org.apache.maven.artifact.manager.WagonManager;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.UnsupportedProtocolException;
+import org.apache.maven.wagon.Wagon;
+import org.apache.maven.wagon.authentication.AuthenticationException;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.observers.Debug;
+import org.apache.maven.wagon.proxy.ProxyInfo;
+import org.apache.maven.wagon.repository.Repository;
+
+/**
+ * The transport used for the downloads of one execution. The proxy and
+ * credentials are resolved once when it's created, and connected Wagons are
+ * kept per host endpoint and handed to the next download from the same
+ * endpoint instead of connecting again. A Wagon can only be used for one
+ * transfer at a time, so concurrent downloads from one endpoint get one
+ * Wagon each. The connection of an idle Wagon may have been closed by the
+ * server in the meantime, so a transfer that fails on a reused Wagon should
+ * be retried once with a new one. All Wagons are disconnected by
+ * {@link #close(Log)}.
+ */
+public class Transport {
+
+	private final WagonManager wagonManager;
+	private final ProxyInfo proxyInfo;
+	private final AuthenticationInfo authenticationInfo;
+	private final boolean debug;
+
+	private final Map<String, Deque<Wagon>> idle = new HashMap<String, Deque<Wagon>>();
+	private final List<Wagon> connected = new ArrayList<Wagon>();
+	private final Set<Wagon> used = new HashSet<Wagon>();
+	private boolean closed;
+
+	/**
+	 * Creates a new transport.
+	 *
+	 * @param wagonManager the Wagon manager
+	 * @param proxyInfo the proxy to use or <code>null</code>
+	 * @param authenticationInfo the credentials to use or <code>null</code>
+	 * @param debug whether to log the Wagon transfers
+	 */
+	public Transport(WagonManager wagonManager, ProxyInfo proxyInfo, AuthenticationInfo authenticationInfo, boolean debug) {
+		this.wagonManager = wagonManager;
+		this.proxyInfo = proxyInfo;
+		this.authenticationInfo = authenticationInfo;
+		this.debug = debug;
+	}
+
+	/**
+	 * @return The proxy or <code>null</code>.
+	 */
+	public ProxyInfo getProxyInfo() {
+		return proxyInfo;
+	}
+
+	/**
+	 * @return The credentials or <code>null</code>.
+	 */
+	public AuthenticationInfo getAuthenticationInfo() {
+		return authenticationInfo;
+	}
+
+	/**
+	 * Returns a connected Wagon for the endpoint of <code>repository</code>
+	 * for the exclusive use of the caller, until it's handed back with
+	 * {@link #release(Repository, Wagon)} or {@link #discard(Wagon)}.
+	 *
+	 * @param repository the repository with the endpoint to connect to
+	 * @return The connected Wagon
+	 * @throws UnsupportedProtocolException if the protocol isn't supported
+	 * @throws WagonConfigurationException if the Wagon could not be configured
+	 * @throws ConnectionException if the connection failed
+	 * @throws AuthenticationException if the authentication failed
+	 */
+	public Wagon acquire(Repository repository)
+		throws UnsupportedProtocolException, WagonConfigurationException, ConnectionException, AuthenticationException {
+		return acquire(repository, true);
+	}
+
+	/**
+	 * Returns a connected Wagon for the endpoint of <code>repository</code>
+	 * like {@link #acquire(Repository)}, optionally one that is newly
+	 * connected.
+	 *
+	 * @param repository the repository with the endpoint to connect to
+	 * @param reuse whether an idle Wagon may be returned
+	 * @return The connected Wagon
+	 * @throws UnsupportedProtocolException if the protocol isn't supported
+	 * @throws WagonConfigurationException if the Wagon could not be configured
+	 * @throws ConnectionException if the connection failed
+	 * @throws AuthenticationException if the authentication failed
+	 */
+	public Wagon acquire(Repository repository, boolean reuse)
+		throws UnsupportedProtocolException, WagonConfigurationException, ConnectionException, AuthenticationException {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The transport is closed");
+			}
+			Deque<Wagon> wagons = idle.get(repository.getUrl());
+			if (reuse && wagons != null && !wagons.isEmpty()) {
+				return wagons.pop();
+			}
+		}
+
+		Wagon wagon = wagonManager.getWagon(repository);
+		if (debug) {
+			Debug debugListener = new Debug();
+			wagon.addSessionListener(debugListener);
+			wagon.addTransferListener(debugListener);
+		}
+		if (proxyInfo != null) {
+			wagon.connect(repository, authenticationInfo, proxyInfo);
+		} else {
+			wagon.connect(repository, authenticationInfo);
+		}
+		boolean closedMeanwhile;
+		synchronized (this) {
+			closedMeanwhile = closed;
+			if (!closedMeanwhile) {
+				connected.add(wagon);
+			}
+		}
+		if (closedMeanwhile) {
+			// The transport was closed while connecting, so nobody else will disconnect it
+			try {
+				wagon.disconnect();
+			} catch (ConnectionException e) {
+				// It's not going to be used
+			}
+			throw new IllegalStateException("The transport is closed");
+		}
+		return wagon;
+	}
+
+	/**
+	 * Checks if a Wagon has completed a transfer before it was acquired,
+	 * so that its connection may have been closed while it was idle.
+	 *
+	 * @param wagon the Wagon
+	 * @return true if the Wagon was reused.
+	 */
+	public synchronized boolean isReused(Wagon wagon) {
+		return used.contains(wagon);
+	}
+
+	/**
+	 * Hands back a Wagon after a successful transfer so that it can be used
+	 * for the next download from the same endpoint.
+	 *
+	 * @param repository the repository the Wagon was acquired for
+	 * @param wagon the Wagon
+	 */
+	public synchronized void release(Repository repository, Wagon wagon) {
+		if (closed) {
+			// It was disconnected when the transport was closed
+			return;
+		}
+		used.add(wagon);
+		Deque<Wagon> wagons = idle.get(repository.getUrl());
+		if (wagons == null) {
+			wagons = new ArrayDeque<Wagon>();
+			idle.put(repository.getUrl(), wagons);
+		}
+		wagons.push(wagon);
+	}
+
+	/**
+	 * Disconnects a Wagon that is left in an unknown state by a failed
+	 * transfer.
+	 *
+	 * @param wagon the Wagon
+	 */
+	public void discard(Wagon wagon) {
+		synchronized (this) {
+			connected.remove(wagon);
+			used.remove(wagon);
+		}
+		try {
+			wagon.disconnect();
+		} catch (ConnectionException e) {
+			// It's not going to be used again
+		}
+	}
+
+	/**
+	 * Disconnects all Wagons. The transport can't be used afterwards.
+	 *
+	 * @param log the log to report failures to
+	 */
+	public void close(Log log) {
+		List<Wagon> wagons;
+		synchronized (this) {
+			closed = true;
+			wagons = new ArrayList<Wagon>(connected);
+			connected.clear();
+			used.clear();
+			idle.clear();
+		}
+		for (Wagon wagon : wagons) {
+			try {
+				wagon.disconnect();
+			} catch (ConnectionException e) {
+				log.warn("Could not disconnect from " + wagon.getRepository().getUrl() + ": " + e.getMessage());
+			}
+		}
+	}
+}
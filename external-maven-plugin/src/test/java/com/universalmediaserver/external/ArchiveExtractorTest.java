@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the extraction of files and directories by {@link ArchiveExtractor}
+ * from archives created by {@link ArchivePacker} and from crafted archives.
+ */
+public class ArchiveExtractorTest {
+
+	private static final byte[] CONTENT = new byte[100 * 1024];
+
+	static {
+		new Random(1).nextBytes(CONTENT);
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Creates a folder with a subtree to extract and a file beside it.
+	 */
+	private File createContent() throws IOException {
+		File directory = folder.newFolder("content");
+		File bin = new File(directory, "pkg/bin");
+		assertTrue(bin.mkdirs());
+		assertTrue(new File(directory, "pkg/empty").mkdirs());
+		Files.write(new File(bin, "tool").toPath(), CONTENT);
+		Files.write(new File(directory, "pkg/readme.txt").toPath(), "readme".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(directory, "other.txt").toPath(), "other".getBytes(StandardCharsets.UTF_8));
+		new File(bin, "tool").setExecutable(true);
+		return directory;
+	}
+
+	/**
+	 * Writes an archive with the given entries, directories end with a slash
+	 * and files contain their own name.
+	 */
+	private File createArchive(String name, String... entryNames) throws IOException {
+		File archive = new File(folder.getRoot(), name);
+		OutputStream os = Files.newOutputStream(archive.toPath());
+		try (ArchiveOutputStream aos = name.endsWith(".zip") ? new ZipArchiveOutputStream(os) : new TarArchiveOutputStream(os)) {
+			for (String entryName : entryNames) {
+				byte[] content = entryName.getBytes(StandardCharsets.UTF_8);
+				ArchiveEntry entry;
+				if (aos instanceof ZipArchiveOutputStream) {
+					entry = new ZipArchiveEntry(entryName);
+				} else {
+					TarArchiveEntry tarEntry = new TarArchiveEntry(entryName, true);
+					if (!tarEntry.isDirectory()) {
+						tarEntry.setSize(content.length);
+					}
+					entry = tarEntry;
+				}
+				aos.putArchiveEntry(entry);
+				if (!entry.isDirectory()) {
+					aos.write(content);
+				}
+				aos.closeArchiveEntry();
+			}
+		}
+		return archive;
+	}
+
+	private File createTarWithLink(String name, String linkName, byte linkFlag) throws IOException {
+		File archive = new File(folder.getRoot(), "link.tar");
+		try (TarArchiveOutputStream tos = new TarArchiveOutputStream(Files.newOutputStream(archive.toPath()))) {
+			byte[] content = "file".getBytes(StandardCharsets.UTF_8);
+			TarArchiveEntry file = new TarArchiveEntry("pkg/file");
+			file.setSize(content.length);
+			tos.putArchiveEntry(file);
+			tos.write(content);
+			tos.closeArchiveEntry();
+
+			TarArchiveEntry link = new TarArchiveEntry(name, linkFlag);
+			link.setLinkName(linkName);
+			tos.putArchiveEntry(link);
+			tos.closeArchiveEntry();
+		}
+		return archive;
+	}
+
+	private static void assertSameContent(File expected, File actual) throws IOException {
+		String[] expectedNames = expected.list();
+		String[] actualNames = actual.list();
+		assertNotNull(actual.getPath(), actualNames);
+		Arrays.sort(expectedNames);
+		Arrays.sort(actualNames);
+		assertEquals(actual.getPath(), Arrays.asList(expectedNames), Arrays.asList(actualNames));
+		for (String name : expectedNames) {
+			File expectedFile = new File(expected, name);
+			File actualFile = new File(actual, name);
+			if (expectedFile.isDirectory()) {
+				assertSameContent(expectedFile, actualFile);
+			} else {
+				assertArrayEquals(name, Files.readAllBytes(expectedFile.toPath()), Files.readAllBytes(actualFile.toPath()));
+			}
+		}
+	}
+
+	private void assertExtractionFails(File archive, String path, String message) {
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+		extractor.add(path, new File(folder.getRoot(), "out.file"), new File(folder.getRoot(), "out"));
+		try {
+			extractor.extract();
+			fail(message);
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testExtractFile() throws Exception {
+		File content = createContent();
+		for (String name : new String[] {"a.zip", "a.tar.gz"}) {
+			File archive = new File(folder.getRoot(), name);
+			new ArchivePacker(6, 2, false).pack(content, archive);
+
+			File file = new File(folder.getRoot(), name + ".tool");
+			ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.singletonList(DigestCalculator.SHA1));
+			extractor.add("pkg/bin/tool", file, null);
+			extractor.add("pkg/missing", new File(folder.getRoot(), name + ".missing"), null);
+			Map<String, DigestedFile> extracted = extractor.extract();
+
+			assertEquals(name, Collections.singleton("pkg/bin/tool"), extracted.keySet());
+			assertArrayEquals(name, CONTENT, Files.readAllBytes(file.toPath()));
+			assertEquals(
+				name,
+				new DigestedFile(new File(content, "pkg/bin/tool")).getDigest(DigestCalculator.SHA1),
+				extracted.get("pkg/bin/tool").getDigest(DigestCalculator.SHA1)
+			);
+			if (File.separatorChar == '/') {
+				assertTrue(name, file.canExecute());
+			}
+		}
+	}
+
+	@Test
+	public void testExtractSubtreeAndRepack() throws Exception {
+		File content = createContent();
+		for (String name : new String[] {"a.zip", "a.tar", "a.tar.gz"}) {
+			File archive = new File(folder.getRoot(), name);
+			new ArchivePacker(6, 2, true).pack(content, archive);
+
+			File subtree = new File(folder.getRoot(), name + ".pkg");
+			ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+			extractor.add("pkg/", new File(folder.getRoot(), name + ".file"), subtree);
+			Map<String, DigestedFile> extracted = extractor.extract();
+
+			assertEquals(name, subtree, extracted.get("pkg/").getFile());
+			assertSameContent(new File(content, "pkg"), subtree);
+			assertFalse(name, new File(subtree, "other.txt").exists());
+
+			// Repacking the extracted subtree gives the same archive as packing the original
+			File original = new File(folder.getRoot(), "original-" + name);
+			File repacked = new File(folder.getRoot(), "repacked-" + name);
+			new ArchivePacker(6, 2, true).pack(new File(content, "pkg"), original);
+			new ArchivePacker(6, 2, true).pack(subtree, repacked);
+			assertArrayEquals(name, Files.readAllBytes(original.toPath()), Files.readAllBytes(repacked.toPath()));
+		}
+	}
+
+	@Test
+	public void testSharedTarPass() throws Exception {
+		File content = createContent();
+		File archive = new File(folder.getRoot(), "a.tar.gz");
+		new ArchivePacker(6, 2, true).pack(content, archive);
+
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+		extractor.add("other.txt", new File(folder.getRoot(), "other.txt"), null);
+		extractor.add("pkg", new File(folder.getRoot(), "pkg.file"), new File(folder.getRoot(), "pkg"));
+		Map<String, DigestedFile> extracted = extractor.extract();
+
+		assertEquals(2, extracted.size());
+		assertEquals("other", new String(Files.readAllBytes(extracted.get("other.txt").getFile().toPath()), StandardCharsets.UTF_8));
+		assertSameContent(new File(content, "pkg"), extracted.get("pkg").getFile());
+	}
+
+	@Test
+	public void testPrefixedEntryNames() throws Exception {
+		for (String name : new String[] {"prefixed.zip", "prefixed.tar"}) {
+			File archive = createArchive(name, "./pkg/", "./pkg/a.txt", "./bin/tool");
+			ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+			File tool = new File(folder.getRoot(), name + ".tool");
+			File subtree = new File(folder.getRoot(), name + ".pkg");
+			extractor.add("bin/tool", tool, null);
+			extractor.add("pkg", new File(folder.getRoot(), name + ".file"), subtree);
+
+			assertEquals(name, 2, extractor.extract().size());
+			assertEquals(name, "./bin/tool", new String(Files.readAllBytes(tool.toPath()), StandardCharsets.UTF_8));
+			assertTrue(name, new File(subtree, "a.txt").isFile());
+		}
+	}
+
+	@Test
+	public void testParentSegmentsAreRejected() throws Exception {
+		for (String name : new String[] {"parent.zip", "parent.tar"}) {
+			File archive = createArchive(name, "pkg/", "pkg/../../evil.txt");
+			assertExtractionFails(archive, "pkg", "An entry outside the target folder must be rejected");
+			assertFalse(new File(folder.getRoot(), "evil.txt").exists());
+			assertFalse(new File(folder.getRoot().getParentFile(), "evil.txt").exists());
+		}
+	}
+
+	@Test
+	public void testAbsoluteEntryNamesStayInside() throws Exception {
+		for (String name : new String[] {"absolute.zip", "absolute.tar"}) {
+			File archive = createArchive(name, "/pkg/a.txt");
+			File subtree = new File(folder.getRoot(), name + ".pkg");
+			ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+			extractor.add("pkg", new File(folder.getRoot(), name + ".file"), subtree);
+
+			assertEquals(name, 1, extractor.extract().size());
+			assertEquals(name, Arrays.asList("a.txt"), Arrays.asList(subtree.list()));
+		}
+	}
+
+	@Test
+	public void testSymbolicLinks() throws Exception {
+		Assume.assumeTrue("Symbolic links need a POSIX file system", File.separatorChar == '/');
+		File archive = createTarWithLink("pkg/link", "file", TarArchiveEntry.LF_SYMLINK);
+		File subtree = new File(folder.getRoot(), "pkg");
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+		extractor.add("pkg", new File(folder.getRoot(), "pkg.file"), subtree);
+		extractor.extract();
+
+		File link = new File(subtree, "link");
+		assertTrue(Files.isSymbolicLink(link.toPath()));
+		assertEquals("file", Files.readSymbolicLink(link.toPath()).toString());
+		assertEquals("file", new String(Files.readAllBytes(link.toPath()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testHardLinksAreCopied() throws Exception {
+		File archive = createTarWithLink("pkg/link", "pkg/file", TarArchiveEntry.LF_LINK);
+		File subtree = new File(folder.getRoot(), "pkg");
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+		extractor.add("pkg", new File(folder.getRoot(), "pkg.file"), subtree);
+		extractor.extract();
+
+		File link = new File(subtree, "link");
+		assertFalse(Files.isSymbolicLink(link.toPath()));
+		assertEquals("file", new String(Files.readAllBytes(link.toPath()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testLinksOutsideAreRejected() throws Exception {
+		assertExtractionFails(
+			createTarWithLink("pkg/link", "../outside", TarArchiveEntry.LF_SYMLINK),
+			"pkg",
+			"A link to a parent folder must be rejected"
+		);
+		assertExtractionFails(
+			createTarWithLink("pkg/link", "/etc/passwd", TarArchiveEntry.LF_SYMLINK),
+			"pkg",
+			"A link to an absolute path must be rejected"
+		);
+		assertExtractionFails(
+			createTarWithLink("pkg/link", "other/file", TarArchiveEntry.LF_LINK),
+			"pkg",
+			"A hard link to an entry outside the subtree must be rejected"
+		);
+	}
+
+	@Test
+	public void testLinkAsFileIsRejected() throws Exception {
+		File archive = createTarWithLink("pkg/link", "file", TarArchiveEntry.LF_SYMLINK);
+		ArchiveExtractor extractor = new ArchiveExtractor(archive, Collections.<String>emptyList());
+		File file = new File(folder.getRoot(), "link.file");
+		extractor.add("pkg/link", file, null);
+		try {
+			extractor.extract();
+			fail("A link must not be extracted as a file");
+		} catch (IOException e) {
+			assertFalse(file.exists());
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the archives created by {@link ArchivePacker}.
+ */
+public class ArchivePackerTest {
+
+	/** Larger than a chunk of deflated data, and barely compressible */
+	private static final byte[] LARGE = new byte[300 * 1024];
+
+	static {
+		new Random(1).nextBytes(LARGE);
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = folder.newFolder("content");
+		write("a.txt", "a".getBytes(StandardCharsets.UTF_8));
+		write("empty/", null);
+		write("lib/large.bin", LARGE);
+		write("lib/sub/b.txt", "b".getBytes(StandardCharsets.UTF_8));
+		write("lib/sub/empty.txt", new byte[0]);
+	}
+
+	private void write(String path, byte[] content) throws IOException {
+		File file = new File(directory, path);
+		if (content == null) {
+			assertTrue(file.mkdirs());
+			return;
+		}
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content);
+	}
+
+	private File pack(String name, int threads, long maxBuffered) throws IOException {
+		File archive = new File(folder.getRoot(), threads + "-" + maxBuffered + "-" + name);
+		new ArchivePacker(6, threads, true, maxBuffered).pack(directory, archive);
+		return archive;
+	}
+
+	private static byte[] read(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int len;
+		while ((len = is.read(buffer)) != -1) {
+			bos.write(buffer, 0, len);
+		}
+		return bos.toByteArray();
+	}
+
+	private void assertZipContent(File archive) throws IOException {
+		List<String> names = new ArrayList<String>();
+		try (ZipFile zipFile = new ZipFile(archive, "UTF-8")) {
+			Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+			while (entries.hasMoreElements()) {
+				ZipArchiveEntry entry = entries.nextElement();
+				names.add(entry.getName());
+				if (!entry.isDirectory()) {
+					try (InputStream is = zipFile.getInputStream(entry)) {
+						assertArrayEquals(entry.getName(), Files.readAllBytes(new File(directory, entry.getName()).toPath()), read(is));
+					}
+				}
+			}
+		}
+		assertEquals(
+			Arrays.asList("a.txt", "empty/", "lib/", "lib/large.bin", "lib/sub/", "lib/sub/b.txt", "lib/sub/empty.txt"),
+			names
+		);
+	}
+
+	private static List<String> listSpillFiles() {
+		List<String> result = new ArrayList<String>();
+		String[] names = new File(System.getProperty("java.io.tmpdir")).list();
+		for (String name : names != null ? names : new String[0]) {
+			if (name.startsWith("external-repack") && name.endsWith(".deflated")) {
+				result.add(name);
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testZipRoundTrip() throws Exception {
+		File archive = pack("a.zip", 4, 64L * 1024 * 1024);
+		assertZipContent(archive);
+	}
+
+	@Test
+	public void testZipSpilledToTemporaryFiles() throws Exception {
+		List<String> spillFiles = listSpillFiles();
+		File inMemory = pack("a.zip", 4, 64L * 1024 * 1024);
+
+		// Without memory for deflated entries, all of them go through temporary files
+		File spilled = pack("a.zip", 4, 0);
+		assertZipContent(spilled);
+		assertArrayEquals(Files.readAllBytes(inMemory.toPath()), Files.readAllBytes(spilled.toPath()));
+		assertEquals("Temporary files must be deleted", spillFiles, listSpillFiles());
+	}
+
+	@Test
+	public void testSameOutputForAnyThreadCount() throws Exception {
+		for (String name : new String[] {"a.zip", "a.tar", "a.tar.gz"}) {
+			byte[] expected = Files.readAllBytes(pack(name, 1, 64L * 1024 * 1024).toPath());
+			assertArrayEquals(name, expected, Files.readAllBytes(pack(name, 4, 64L * 1024 * 1024).toPath()));
+		}
+	}
+
+	@Test
+	public void testTarGZipRoundTrip() throws Exception {
+		File archive = pack("a.tar.gz", 4, 0);
+		List<String> names = new ArrayList<String>();
+		try (TarArchiveInputStream tis = new TarArchiveInputStream(new GzipCompressorInputStream(Files.newInputStream(archive.toPath())))) {
+			TarArchiveEntry entry;
+			while ((entry = tis.getNextTarEntry()) != null) {
+				names.add(entry.getName());
+				if (entry.isFile()) {
+					assertArrayEquals(entry.getName(), Files.readAllBytes(new File(directory, entry.getName()).toPath()), read(tis));
+				}
+			}
+		}
+		assertEquals(
+			Arrays.asList("a.txt", "empty/", "lib/", "lib/large.bin", "lib/sub/", "lib/sub/b.txt", "lib/sub/empty.txt"),
+			names
+		);
+	}
+
+	@Test
+	public void testSymbolicLinksAreNotFollowed() throws Exception {
+		try {
+			Files.createSymbolicLink(new File(directory, "lib/sub/link").toPath(), Paths.get("../large.bin"));
+			Files.createSymbolicLink(new File(directory, "lib/sub/up").toPath(), Paths.get(".."));
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+		}
+
+		try (ZipFile zipFile = new ZipFile(pack("a.zip", 4, 0), "UTF-8")) {
+			ZipArchiveEntry link = zipFile.getEntry("lib/sub/link");
+			assertNotNull(link);
+			assertTrue(link.isUnixSymlink());
+			assertEquals("../large.bin", zipFile.getUnixSymlink(link));
+			assertTrue(zipFile.getEntry("lib/sub/up").isUnixSymlink());
+			assertEquals(null, zipFile.getEntry("lib/sub/up/a.txt"));
+		}
+
+		File archive = pack("a.tar", 4, 0);
+		List<String> links = new ArrayList<String>();
+		try (TarArchiveInputStream tis = new TarArchiveInputStream(Files.newInputStream(archive.toPath()))) {
+			TarArchiveEntry entry;
+			while ((entry = tis.getNextTarEntry()) != null) {
+				if (entry.isSymbolicLink()) {
+					links.add(entry.getName() + " -> " + entry.getLinkName());
+				}
+			}
+		}
+		assertEquals(Arrays.asList("lib/sub/link -> ../large.bin", "lib/sub/up -> .."), links);
+	}
+}
@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the conditional, resumed and redirected downloads of
+ * {@link HttpTransfer} against an embedded HTTP server.
+ */
+public class HttpTransferTest {
+
+	private static final int TIMEOUT = 5000;
+	private static final String ETAG = "\"v1\"";
+	private static final String LAST_MODIFIED = "Sat, 17 Oct 2026 10:00:00 GMT";
+	private static final byte[] CONTENT = new byte[256 * 1024];
+
+	static {
+		new Random(1).nextBytes(CONTENT);
+	}
+
+	/**
+	 * The request headers the server received.
+	 */
+	private static class Request {
+		private final String path;
+		private final String range;
+		private final String ifRange;
+		private final String ifNoneMatch;
+		private final String authorization;
+
+		public Request(HttpExchange exchange) {
+			path = exchange.getRequestURI().getPath();
+			range = exchange.getRequestHeaders().getFirst("Range");
+			ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+			ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+	private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+
+	/** The number of bytes to send before the connection is dropped, or -1 */
+	private volatile int dropAfter = -1;
+
+	/** Whether range requests are answered with 416 */
+	private volatile boolean rangeNotSatisfiable;
+
+	/** Whether range requests are answered with the complete file */
+	private volatile boolean ignoreRange;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(0), 0);
+		server.createContext("/file.bin", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.add(new Request(exchange));
+				serveFile(exchange);
+			}
+		});
+		server.createContext("/redirect", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.add(new Request(exchange));
+				// The same server under another host name
+				exchange.getResponseHeaders().set("Location", "http://127.0.0.1:" + getPort() + "/file.bin");
+				exchange.sendResponseHeaders(302, -1);
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private URL getUrl(String path) throws IOException {
+		return new URL("http://localhost:" + getPort() + path);
+	}
+
+	private void serveFile(HttpExchange exchange) throws IOException {
+		try {
+			exchange.getResponseHeaders().set("ETag", ETAG);
+			exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+
+			if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+			if (range != null && rangeNotSatisfiable) {
+				exchange.getResponseHeaders().set("Content-Range", "bytes */" + CONTENT.length);
+				exchange.sendResponseHeaders(416, -1);
+				return;
+			}
+			if (range != null && !ignoreRange && (ifRange == null || ETAG.equals(ifRange))) {
+				int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+				exchange.getResponseHeaders().set(
+					"Content-Range",
+					"bytes " + start + "-" + (CONTENT.length - 1) + "/" + CONTENT.length
+				);
+				exchange.sendResponseHeaders(206, CONTENT.length - start);
+				try (OutputStream os = exchange.getResponseBody()) {
+					os.write(CONTENT, start, CONTENT.length - start);
+				}
+				return;
+			}
+
+			exchange.sendResponseHeaders(200, CONTENT.length);
+			OutputStream os = exchange.getResponseBody();
+			int drop = dropAfter;
+			if (drop >= 0) {
+				dropAfter = -1;
+				os.write(CONTENT, 0, drop);
+				os.flush();
+				// Failing the exchange makes the server close the connection
+				throw new IOException("Dropping the connection after " + drop + " bytes");
+			}
+			os.write(CONTENT);
+			os.close();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static DigestCalculator newCalculator() {
+		return new DigestCalculator(Arrays.asList(DigestCalculator.SHA1));
+	}
+
+	private static String sha1(byte[] data, int len) {
+		DigestCalculator calculator = newCalculator();
+		calculator.update(data, 0, len);
+		return calculator.getDigests().get(DigestCalculator.SHA1);
+	}
+
+	private static void write(File file, byte[] data, int len) throws IOException {
+		try (OutputStream os = new FileOutputStream(file)) {
+			os.write(data, 0, len);
+		}
+	}
+
+	private static void assertContent(File file) throws IOException {
+		assertArrayEquals(CONTENT, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+		DigestCalculator calculator = newCalculator();
+
+		assertTrue(transfer.get(file, null, true, calculator));
+		assertContent(file);
+		assertEquals(sha1(CONTENT, CONTENT.length), calculator.getDigests().get(DigestCalculator.SHA1));
+		assertEquals(ETAG, transfer.getValidators().getETag());
+		assertEquals(LAST_MODIFIED, transfer.getValidators().getLastModified());
+		assertEquals(CONTENT.length, transfer.getValidators().getContentLength());
+		assertFalse("Validators of a complete download must be removed", HttpValidators.getFile(file).exists());
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		write(file, CONTENT, CONTENT.length);
+		HttpValidators conditional = new HttpValidators(getUrl("/file.bin").toExternalForm(), ETAG, LAST_MODIFIED, CONTENT.length);
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+
+		assertFalse(transfer.get(file, conditional, false, newCalculator()));
+		assertEquals(1, requests.size());
+		assertEquals(ETAG, requests.get(0).ifNoneMatch);
+		assertTrue(conditional == transfer.getValidators());
+		assertContent(file);
+	}
+
+	@Test
+	public void testResumeAfterDroppedConnection() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+		DigestCalculator calculator = newCalculator();
+		dropAfter = 100000;
+
+		assertTrue(transfer.get(file, null, true, calculator));
+		assertEquals(2, requests.size());
+		assertNull(requests.get(0).range);
+		assertTrue(requests.get(1).range.startsWith("bytes="));
+		assertEquals(ETAG, requests.get(1).ifRange);
+		long resumedFrom = transfer.getResumedFrom();
+		assertTrue("Resumed from " + resumedFrom, resumedFrom > 0 && resumedFrom <= 100000);
+		assertEquals("bytes=" + resumedFrom + "-", requests.get(1).range);
+		assertContent(file);
+		assertEquals(sha1(CONTENT, CONTENT.length), calculator.getDigests().get(DigestCalculator.SHA1));
+		assertFalse(HttpValidators.getFile(file).exists());
+	}
+
+	@Test
+	public void testResumePartialDownload() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		write(file, CONTENT, 1000);
+		new HttpValidators(getUrl("/file.bin").toExternalForm(), ETAG, LAST_MODIFIED, CONTENT.length).store(file);
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+		DigestCalculator calculator = newCalculator();
+
+		assertTrue(transfer.get(file, null, true, calculator));
+		assertEquals(1, requests.size());
+		assertEquals("bytes=1000-", requests.get(0).range);
+		assertEquals(ETAG, requests.get(0).ifRange);
+		assertEquals(1000, transfer.getResumedFrom());
+		assertContent(file);
+		assertEquals(sha1(CONTENT, CONTENT.length), calculator.getDigests().get(DigestCalculator.SHA1));
+	}
+
+	@Test
+	public void testPartialDownloadNotResumedIfNotResumable() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		write(file, CONTENT, 1000);
+		new HttpValidators(getUrl("/file.bin").toExternalForm(), ETAG, LAST_MODIFIED, CONTENT.length).store(file);
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+
+		assertTrue(transfer.get(file, null, false, newCalculator()));
+		assertNull(requests.get(0).range);
+		assertEquals(0, transfer.getResumedFrom());
+		assertContent(file);
+	}
+
+	@Test
+	public void testRangeNotSatisfiable() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		write(file, CONTENT, 1000);
+		new HttpValidators(getUrl("/file.bin").toExternalForm(), ETAG, LAST_MODIFIED, CONTENT.length).store(file);
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+		DigestCalculator calculator = newCalculator();
+		rangeNotSatisfiable = true;
+
+		assertTrue(transfer.get(file, null, true, calculator));
+		assertEquals(2, requests.size());
+		assertEquals("bytes=1000-", requests.get(0).range);
+		assertNull("The download must start over", requests.get(1).range);
+		assertEquals(0, transfer.getResumedFrom());
+		assertContent(file);
+		assertEquals(sha1(CONTENT, CONTENT.length), calculator.getDigests().get(DigestCalculator.SHA1));
+	}
+
+	@Test
+	public void testCompleteResponseToRangeRequest() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		byte[] stale = new byte[1000];
+		Arrays.fill(stale, (byte) 0x55);
+		write(file, stale, stale.length);
+		new HttpValidators(getUrl("/file.bin").toExternalForm(), "\"v0\"", null, CONTENT.length).store(file);
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+		DigestCalculator calculator = newCalculator();
+
+		assertTrue(transfer.get(file, null, true, calculator));
+		assertEquals(1, requests.size());
+		assertEquals("bytes=1000-", requests.get(0).range);
+		assertEquals("\"v0\"", requests.get(0).ifRange);
+		assertEquals("The stale part must be replaced", 0, transfer.getResumedFrom());
+		assertContent(file);
+		assertEquals(sha1(CONTENT, CONTENT.length), calculator.getDigests().get(DigestCalculator.SHA1));
+		assertEquals(ETAG, transfer.getValidators().getETag());
+	}
+
+	@Test
+	public void testCompleteResponseToRangeRequestWithoutIfRange() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		write(file, CONTENT, 1000);
+		new HttpValidators(getUrl("/file.bin").toExternalForm(), ETAG, LAST_MODIFIED, CONTENT.length).store(file);
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, null);
+		ignoreRange = true;
+
+		assertTrue(transfer.get(file, null, true, newCalculator()));
+		assertEquals("bytes=1000-", requests.get(0).range);
+		assertEquals(0, transfer.getResumedFrom());
+		assertContent(file);
+	}
+
+	@Test
+	public void testCrossHostRedirectDropsAuthorization() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		AuthenticationInfo authenticationInfo = new AuthenticationInfo();
+		authenticationInfo.setUserName("user");
+		authenticationInfo.setPassword("secret");
+		HttpTransfer transfer = new HttpTransfer(getUrl("/redirect"), TIMEOUT, null, authenticationInfo);
+
+		assertTrue(transfer.get(file, null, false, newCalculator()));
+		assertEquals(2, requests.size());
+		assertEquals("/redirect", requests.get(0).path);
+		assertNotNull("The download host must get the credentials", requests.get(0).authorization);
+		assertTrue(requests.get(0).authorization.startsWith("Basic "));
+		assertEquals("/file.bin", requests.get(1).path);
+		assertNull("The credentials must not be sent to another host", requests.get(1).authorization);
+		assertContent(file);
+	}
+
+	@Test
+	public void testSameHostKeepsAuthorization() throws Exception {
+		File file = new File(folder.getRoot(), "file.bin");
+		AuthenticationInfo authenticationInfo = new AuthenticationInfo();
+		authenticationInfo.setUserName("user");
+		authenticationInfo.setPassword("secret");
+		HttpTransfer transfer = new HttpTransfer(getUrl("/file.bin"), TIMEOUT, null, authenticationInfo);
+
+		assertTrue(transfer.get(file, null, false, newCalculator()));
+		assertEquals("Basic dXNlcjpzZWNyZXQ=", requests.get(0).authorization);
+	}
+}
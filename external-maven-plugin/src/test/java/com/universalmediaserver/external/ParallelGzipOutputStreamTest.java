@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ **/
+
+package com.universalmediaserver.external;
+
+import static org.junit.Assert.assertArrayEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that {@link ParallelGzipOutputStream} writes valid gzip data that
+ * doesn't depend on the number of threads.
+ */
+public class ParallelGzipOutputStreamTest {
+
+	/** The smallest block size, the size of the deflate dictionary */
+	private static final int BLOCK_SIZE = 32 * 1024;
+	private static final byte[] CONTENT = new byte[BLOCK_SIZE * 7 / 2];
+
+	static {
+		// Repeat random runs so that matches span the block boundaries
+		Random random = new Random(1);
+		byte[] run = new byte[1000];
+		for (int i = 0; i < CONTENT.length; i += run.length) {
+			if (random.nextInt(4) == 0) {
+				random.nextBytes(run);
+			}
+			System.arraycopy(run, 0, CONTENT, i, Math.min(run.length, CONTENT.length - i));
+		}
+	}
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private byte[] compress(byte[] content, int level, int threads) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ParallelGzipOutputStream os = new ParallelGzipOutputStream(bos, level, executor, threads, BLOCK_SIZE)) {
+			// Odd write sizes, so that writes end inside blocks
+			for (int off = 0; off < content.length; off += 9999) {
+				os.write(content, off, Math.min(9999, content.length - off));
+			}
+		}
+		return bos.toByteArray();
+	}
+
+	private static byte[] decompress(byte[] compressed) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			byte[] buffer = new byte[8192];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				bos.write(buffer, 0, len);
+			}
+		}
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testRoundTripAcrossBlocks() throws Exception {
+		for (int level : new int[] {0, 1, 6, 9}) {
+			assertArrayEquals("Level " + level, CONTENT, decompress(compress(CONTENT, level, 4)));
+		}
+	}
+
+	@Test
+	public void testRoundTripOfEmptyAndSingleBlock() throws Exception {
+		byte[] empty = new byte[0];
+		assertArrayEquals(empty, decompress(compress(empty, 6, 4)));
+		byte[] single = new byte[BLOCK_SIZE];
+		System.arraycopy(CONTENT, 0, single, 0, single.length);
+		assertArrayEquals(single, decompress(compress(single, 6, 4)));
+	}
+
+	@Test
+	public void testSameOutputForAnyThreadCount() throws Exception {
+		byte[] expected = compress(CONTENT, 6, 1);
+		assertArrayEquals(expected, compress(CONTENT, 6, 2));
+		assertArrayEquals(expected, compress(CONTENT, 6, 4));
+	}
+}